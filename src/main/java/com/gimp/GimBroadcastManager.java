@@ -24,59 +24,253 @@
  */
 package com.gimp;
 
+import com.gimp.gimps.GimField;
 import com.gimp.gimps.GimPlayer;
+import com.gimp.gimps.GimUpdate;
 import com.gimp.requests.*;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import io.socket.client.Socket;
-import io.socket.emitter.Emitter;
-import java.lang.reflect.Type;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import java.util.Map;
+import net.runelite.client.RuneLite;
+import net.runelite.client.plugins.party.messages.TilePing;
+import org.json.JSONObject;
 
 @Slf4j
 public class GimBroadcastManager
 {
-	private static final Type pingDataTypeForJson = new TypeToken<Map<String, GimPlayer>>()
-	{
-	}.getType();
+	private static final String NAME = "name";
+
+	private static final String TILE_PING = "tilePing";
 
-	private static final String EVENT_BROADCAST = "broadcast";
+	/* Duration in milliseconds before the fields of a failed broadcast are sent again, unless a change sends them sooner. */
+	private static final long RETRY_DELAY = 5_000;
 
 	private final HttpClient httpClient;
 
-	private final SocketClient socketClient;
+	@Getter(AccessLevel.PACKAGE)
+	private final RealtimeClient socketClient;
+
+	/* Receives broadcasts over plain HTTP while the socket can't connect. */
+	private final EventStreamClient streamClient;
+
+	private final ConnectionSupervisor supervisor;
+
+	private final ServerSelector servers;
 
 	private final Gson gson;
 
+	private final GimPluginConfig config;
+
+	private final BroadcastDelta broadcastDelta = new BroadcastDelta();
+
+	private final ServerClock serverClock = new ServerClock();
+
+	/* Changes that failed to send, kept until the server is reachable again. */
+	private final BroadcastOutbox outbox;
+
+
+	/* First ping after connecting, shared by pings made while it's pending. */
+	private volatile HedgedPing startupPing;
+
+	/* Handles the data of pings sent as socket heartbeats. */
+	private volatile Consumer<CompletableFuture<PingData>> heartbeatHandler;
+
+	/* Changes collected during the current broadcast window. */
+	private final Map<String, Object> pendingData = new HashMap<>();
+
+	/* Local gimp from the latest broadcast, whose dirty fields are added to the changes when they're sent. */
+	private GimPlayer localGimp;
+
+	private ScheduledFuture<?> pendingFlush;
+
+	/* Whether a state broadcast is in flight, which queued changes wait for. */
+	private boolean stateInFlight;
+
+	/* Version of the latest ping data, sent with pings to only get what changed since. */
+	private volatile Long pingCursor;
+
+	final private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
 	public GimBroadcastManager(String groupName, GimPluginConfig config, Gson gson)
+	{
+		this(groupName, config, gson, new File(RuneLite.RUNELITE_DIR, "gimp"));
+	}
+
+	/**
+	 * Creates a broadcast manager keeping its files in the given directory.
+	 *
+	 * @param groupName name of the group
+	 * @param config    plugin config
+	 * @param gson      gson instance
+	 * @param directory directory of the transport cache and outbox
+	 */
+	GimBroadcastManager(String groupName, GimPluginConfig config, Gson gson, File directory)
 	{
 		this.gson = gson;
-		httpClient = new HttpClient(groupName, config);
-		socketClient = new SocketClient(groupName, config);
+		this.config = config;
+		final PayloadCodec jsonCodec = new JsonCodec(gson);
+		httpClient = new HttpClient(groupName, config, jsonCodec);
+		final PayloadCodec binaryCodec = new BinaryCodec();
+		if (config.transport() == GimPluginConfig.Transport.WEBSOCKET)
+		{
+			socketClient = new WebSocketClient(groupName, config, httpClient, jsonCodec, binaryCodec, jsonCodec);
+		}
+		else
+		{
+			final SocketClient ioClient = new SocketClient(groupName, config, jsonCodec, binaryCodec, jsonCodec);
+			ioClient.transports = new TransportCache(new File(directory, "transports.json"), gson);
+			ioClient.transports.load();
+			socketClient = ioClient;
+		}
+		streamClient = new EventStreamClient(groupName, config, httpClient, jsonCodec, binaryCodec, jsonCodec);
+		servers = new ServerSelector(config, httpClient);
+		httpClient.servers = servers;
+		socketClient.servers = servers;
+		streamClient.servers = servers;
+		// Versions and broadcast baselines belong to the server they came from
+		servers.onChange(this::resetServerState);
+		supervisor = new ConnectionSupervisor(socketClient, streamClient, httpClient, servers, executor);
+		supervisor.setHeartbeat(this::heartbeat);
+		final String outboxName = "outbox-" + groupName.replaceAll("[^A-Za-z0-9_-]", "_") + ".json";
+		outbox = new BroadcastOutbox(new File(directory, outboxName), gson);
+		outbox.load();
+		// Deliver what failed to send along with the first broadcast after connecting
+		supervisor.on(socketClient, RealtimeClient.EVENT_CONNECT, args -> drainOutbox());
+		supervisor.on(streamClient, RealtimeClient.EVENT_CONNECT, args -> drainOutbox());
+		// Or after HTTP works again, for users who never get a realtime connection
+		supervisor.onHttpRecovery(this::drainOutbox);
+		// Registered once rather than per startup ping, so listeners don't pile up
+		supervisor.on(socketClient, RealtimeClient.EVENT_SESSION, args -> joinStartupPing());
+		supervisor.on(streamClient, RealtimeClient.EVENT_SESSION, args -> joinStartupPing());
+	}
+
+	/**
+	 * Parses JSON string of the ping data.
+	 *
+	 * @param dataJson      JSON string of ping data
+	 * @param requestedFull whether the ping asked for every gimp's data
+	 * @return ping data
+	 */
+	private PingData parsePingData(String dataJson, boolean requestedFull)
+	{
+		try
+		{
+			return GimUpdateReader.readPing(dataJson, requestedFull);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Malformed ping data", e);
+		}
+	}
+
+	/**
+	 * Reads a broadcast event's data into the update, which is reset first.
+	 * Malformed data, e.g. a truncated binary payload, is logged and
+	 * dropped, so one bad frame doesn't take the connection down with it.
+	 *
+	 * @param args   broadcast event arguments
+	 * @param update update to write the fields to
+	 * @return whether the data was read
+	 */
+	public boolean parseBroadcastData(Object[] args, GimUpdate update)
+	{
+		try
+		{
+			// Broadcasts arrive as binary if that format was negotiated
+			if (args.length > 0 && args[0] instanceof byte[])
+			{
+				parseBroadcastData((byte[]) args[0], update);
+				return true;
+			}
+			if (args.length > 0 && args[0] instanceof JSONObject)
+			{
+				parseBroadcastData((JSONObject) args[0], update);
+				return true;
+			}
+			log.warn("Dropping broadcast of unexpected type: " + (args.length > 0 ? args[0] : null));
+		}
+		catch (IllegalArgumentException e)
+		{
+			log.warn("Dropping malformed broadcast: " + e);
+		}
+		return false;
 	}
 
 	/**
-	 * Parses JSON string of the ping data and adds to a GimPlayer Map.
+	 * Reads the broadcast data already parsed by the socket client into
+	 * the update, which is reset first.
 	 *
-	 * @param dataJson JSON string of ping data
-	 * @return map: name => GimPlayer
+	 * @param dataJson broadcast data
+	 * @param update   update to write the fields to
 	 */
-	private Map<String, GimPlayer> parsePingData(String dataJson)
+	public void parseBroadcastData(JSONObject dataJson, GimUpdate update)
 	{
-		return gson.fromJson(dataJson, pingDataTypeForJson);
+		update.reset();
+		GimUpdateReader.read(dataJson, update);
+		toLocalTime(update);
 	}
 
 	/**
-	 * Parses JSON string of the broadcast data and maps to a GimPlayer instance.
+	 * Decodes a binary broadcast payload with the negotiated codec into
+	 * the update, which is reset first.
 	 *
-	 * @param dataJson JSON string of broadcast data
-	 * @return GimPlayer
+	 * @param payload binary broadcast data
+	 * @param update  update to write the fields to
 	 */
-	public GimPlayer parseBroadcastData(String dataJson)
+	public void parseBroadcastData(byte[] payload, GimUpdate update)
 	{
-		return gson.fromJson(dataJson, GimPlayer.class);
+		update.reset();
+		socketClient.codec.decode(payload, update);
+		toLocalTime(update);
+	}
+
+	/**
+	 * Converts a time from the server clock to ours.
+	 *
+	 * @param serverTime server time in milliseconds
+	 * @return local time in milliseconds
+	 */
+	public long toLocalTime(long serverTime)
+	{
+		return serverClock.toLocalTime(serverTime);
+	}
+
+	/**
+	 * Converts the update's timestamp from the server clock to ours.
+	 *
+	 * @param update update with a timestamp in server time
+	 */
+	private void toLocalTime(GimUpdate update)
+	{
+		if (update.has(GimField.TIMESTAMP))
+		{
+			update.setTimestamp(serverClock.toLocalTime(update.getTimestamp()));
+		}
+	}
+
+	/**
+	 * Gets the shortest recent round trip time of pings to the server.
+	 *
+	 * @return round trip time in milliseconds, or -1 if unknown
+	 */
+	public long getRtt()
+	{
+		return serverClock.getRtt();
 	}
 
 	/**
@@ -90,146 +284,704 @@ public class GimBroadcastManager
 	}
 
 	/**
-	 * Connects socket client to the server and joins the group's room.
+	 * Checks if broadcasts are pushed by the server, over either the socket
+	 * or the event stream, rather than having to be polled for.
+	 *
+	 * @return whether socket or event stream is connected
+	 */
+	public boolean isConnected()
+	{
+		return socketClient.isConnected() || streamClient.isConnected();
+	}
+
+	/**
+	 * Gets the number of requests in flight across the socket and HTTP clients.
+	 *
+	 * @return in-flight request count
+	 */
+	public int getInFlightCount()
+	{
+		return socketClient.getInFlightCount() + httpClient.getInFlightCount();
+	}
+
+	/**
+	 * Connects to the server, keeping the socket connected and streaming
+	 * broadcasts over HTTP while it can't, until disconnected.
+	 */
+	public void connect()
+	{
+		supervisor.start();
+	}
+
+	/**
+	 * Drops the connections and connects again right away, e.g. after the
+	 * server address changed. A different server is reconnected to by the
+	 * supervisor once notified, which also resets what the old server was
+	 * sent.
 	 */
-	public void connectSocketClient()
+	public void reconnect()
 	{
-		socketClient.connect();
+		if (!servers.reload())
+		{
+			supervisor.restart();
+		}
 	}
 
 	/**
-	 * Registers a "connect" listener.
+	 * Disconnects socket and event stream clients from the server.
+	 */
+	public void disconnect()
+	{
+		supervisor.stop();
+	}
+
+	/**
+	 * Gets broadcast client, using the socket client if it's connected,
+	 * then the event stream client, and falling back on the HTTP client.
+	 *
+	 * @return a realtime client or HTTPClient
+	 * @throws IllegalStateException if the server has been unreachable over HTTP too
+	 */
+	private RequestClient getRequestClient()
+	{
+		RequestClient requestClient = supervisor.getRequestClient();
+		if (requestClient == null)
+		{
+			throw new IllegalStateException("Server unreachable, waiting before retrying");
+		}
+		return requestClient;
+	}
+
+	/**
+	 * Registers a "connect" listener on the socket and event stream.
 	 *
 	 * @param handleConnect listener for the connect event
 	 */
-	public void onBroadcastConnect(Emitter.Listener handleConnect)
+	public void onBroadcastConnect(EventEmitter.Listener handleConnect)
 	{
-		Socket client = socketClient.getClient();
-		if (client != null)
+		on(RealtimeClient.EVENT_CONNECT, handleConnect);
+	}
+
+	/**
+	 * Registers a listener for the socket or event stream disconnecting or
+	 * failing to connect.
+	 *
+	 * @param handleDisconnect listener for the disconnect and connect_error events
+	 */
+	public void onBroadcastDisconnect(EventEmitter.Listener handleDisconnect)
+	{
+		on(RealtimeClient.EVENT_DISCONNECT, handleDisconnect);
+		on(RealtimeClient.EVENT_CONNECT_ERROR, handleDisconnect);
+	}
+
+	/**
+	 * Registers a "session" listener, called once the server has answered
+	 * the handshake with whether it resumed the session.
+	 *
+	 * @param handleSession listener for the session event
+	 */
+	public void onBroadcastSession(EventEmitter.Listener handleSession)
+	{
+		on(RealtimeClient.EVENT_SESSION, handleSession);
+	}
+
+	/**
+	 * Registers a handler for the pings sent as socket heartbeats when the
+	 * socket has been silent. Their data is only what changed since the
+	 * latest ping, which is nothing unless broadcasts went missing.
+	 *
+	 * @param handleHeartbeat handler for the future of heartbeat ping data
+	 */
+	public void onHeartbeat(Consumer<CompletableFuture<PingData>> handleHeartbeat)
+	{
+		heartbeatHandler = handleHeartbeat;
+	}
+
+	/**
+	 * Pings over the socket to draw a response from the server, which shows
+	 * the connection is still alive.
+	 */
+	private void heartbeat()
+	{
+		final CompletableFuture<PingData> heartbeatPing = ping(socketClient);
+		final Consumer<CompletableFuture<PingData>> handler = heartbeatHandler;
+		if (handler != null)
 		{
-			client.on(Socket.EVENT_CONNECT, handleConnect);
+			handler.accept(heartbeatPing);
 		}
 	}
 
 	/**
-	 * Registers a "disconnect" listener.
+	 * Starts listening for the "broadcast" event on the socket and event stream
+	 * and passes in a listener to handle the broadcast data.
+	 *
+	 * @param handleBroadcast handler for processing the broadcast data
+	 */
+	public void listen(EventEmitter.Listener handleBroadcast)
+	{
+		on(RealtimeClient.EVENT_BROADCAST, handleBroadcast);
+	}
+
+	/**
+	 * Turns off the listener for the "broadcast" event.
+	 */
+	public void stopListening()
+	{
+		supervisor.off(socketClient, RealtimeClient.EVENT_BROADCAST);
+		supervisor.off(streamClient, RealtimeClient.EVENT_BROADCAST);
+	}
+
+	/**
+	 * Registers a listener on both realtime clients, kept across reconnects.
 	 *
-	 * @param handleDisconnect listener for the disconnect event
+	 * @param event    event name
+	 * @param listener event listener
 	 */
-	public void onBroadcastDisconnect(Emitter.Listener handleDisconnect)
+	private void on(String event, EventEmitter.Listener listener)
 	{
-		Socket client = socketClient.getClient();
-		if (client != null)
+		supervisor.on(socketClient, event, listener);
+		supervisor.on(streamClient, event, listener);
+	}
+
+	/**
+	 * Sends a tile ping right away with high priority, ahead of any queued
+	 * changes. Tile pings are events rather than state, so they skip the
+	 * broadcast window and baseline.
+	 *
+	 * @param name     name of the local gimp
+	 * @param tilePing tile ping
+	 */
+	public void broadcastTilePing(String name, TilePing tilePing)
+	{
+		synchronized (pendingData)
 		{
-			client.on(Socket.EVENT_DISCONNECT, handleDisconnect);
+			if (executor.isShutdown())
+			{
+				log.debug("Broadcast manager is shut down, dropping tile ping");
+				return;
+			}
+			final Map<String, Object> event = new HashMap<>();
+			event.put(NAME, name);
+			event.put(TILE_PING, tilePing);
+			executor.execute(() -> sendEvent(event));
 		}
 	}
 
 	/**
-	 * Registers a "connect_error" listener.
+	 * Queues the fields of the local gimp marked dirty for the next
+	 * broadcast. Nothing is copied until the broadcast window ends, when
+	 * the latest values of every field marked during it are read at once,
+	 * so frequent changes like location cost nothing in between.
 	 *
-	 * @param handleError listener for the connect_error event
+	 * @param gimp local gimp
 	 */
-	public void onBroadcastConnectError(Emitter.Listener handleError)
+	public void broadcast(GimPlayer gimp)
 	{
-		Socket client = socketClient.getClient();
-		if (client != null)
+		final long window = config.broadcastWindow();
+		synchronized (pendingData)
 		{
-			client.on(Socket.EVENT_CONNECT_ERROR, handleError);
+			if (executor.isShutdown())
+			{
+				log.debug("Broadcast manager is shut down, dropping broadcast");
+				return;
+			}
+			localGimp = gimp;
+			scheduleFlush(window);
 		}
 	}
 
 	/**
-	 * Disconnects socket client from the server.
+	 * Queues the changes in the outbox that aren't superseded by queued
+	 * ones, so they go out with the next broadcast.
 	 */
-	public void disconnectSocketClient()
+	private void drainOutbox()
 	{
-		socketClient.disconnect();
+		if (outbox.isEmpty())
+		{
+			return;
+		}
+		synchronized (pendingData)
+		{
+			if (localGimp == null || executor.isShutdown())
+			{
+				return;
+			}
+			final String localName = localGimp.getName();
+			final Map<String, Object> fields = outbox.getFields(localName);
+			if (fields.isEmpty())
+			{
+				return;
+			}
+			log.debug("Draining outbox");
+			pendingData.putIfAbsent(NAME, localName);
+			for (Map.Entry<String, Object> entry : fields.entrySet())
+			{
+				pendingData.putIfAbsent(entry.getKey(), entry.getValue());
+			}
+			scheduleFlush(config.broadcastWindow());
+		}
 	}
 
 	/**
-	 * Gets broadcast client, using the socket client if it's
-	 * connected and falling back on the HTTP client.
+	 * Schedules the queued changes to be sent at the end of the broadcast
+	 * window, or right away if there is none. Must hold the pendingData lock.
 	 *
-	 * @return a SocketClient or HTTPClient
+	 * @param window broadcast window in milliseconds
 	 */
-	private RequestClient getRequestClient()
+	private void scheduleFlush(long window)
 	{
-		if (socketClient.isConnected())
+		if (window <= 0)
 		{
-			return socketClient;
+			executor.execute(this::flush);
 		}
-		else
+		else if (pendingFlush == null)
 		{
-			return httpClient;
+			pendingFlush = executor.schedule(this::flush, window, TimeUnit.MILLISECONDS);
 		}
 	}
 
 	/**
-	 * Starts listening for the "broadcast" socket event and passes in a listener
-	 * to handle the broadcast data.
+	 * Sends all changes queued during the current broadcast window, unless
+	 * a state broadcast is still in flight. Then they wait for it, so slow
+	 * requests don't pile up stale state ahead of newer state and events.
+	 */
+	private void flush()
+	{
+		sendQueued(false);
+	}
+
+	/**
+	 * Sends all changes queued during the current broadcast window.
 	 *
-	 * @param handleBroadcast handler for processing the broadcast data
+	 * @param force whether to send even if a state broadcast is in flight
 	 */
-	public void listen(Emitter.Listener handleBroadcast)
+	private void sendQueued(boolean force)
 	{
-		Socket client = socketClient.getClient();
-		if (client != null)
+		final Map<String, Object> data;
+		synchronized (pendingData)
 		{
-			client.on(EVENT_BROADCAST, handleBroadcast);
+			if (pendingFlush != null)
+			{
+				pendingFlush.cancel(false);
+				pendingFlush = null;
+			}
+			// Dirty fields hold the latest values, so they supersede queued ones
+			if (localGimp != null)
+			{
+				final int dirty = localGimp.takeDirty();
+				if (dirty != 0)
+				{
+					pendingData.put(NAME, localGimp.getName());
+					localGimp.putFields(dirty, pendingData);
+				}
+			}
+			if (pendingData.isEmpty() || (stateInFlight && !force))
+			{
+				return;
+			}
+			data = new HashMap<>(pendingData);
+			pendingData.clear();
+			stateInFlight = true;
 		}
+		send(data);
 	}
 
 	/**
-	 * Turns off the listener for the "broadcast" event.
+	 * Marks the state broadcast in flight as done, and sends the changes
+	 * queued while it was in flight.
 	 */
-	public void stopListening()
+	private void onStateSent()
+	{
+		synchronized (pendingData)
+		{
+			stateInFlight = false;
+			if (pendingData.isEmpty() || pendingFlush != null || executor.isShutdown())
+			{
+				return;
+			}
+			executor.execute(this::flush);
+		}
+	}
+
+	/**
+	 * Sends a latency-critical event, e.g. a tile ping, with high priority.
+	 * Events aren't state, so they're sent as is, without a sequence number.
+	 *
+	 * @param event event data
+	 */
+	private void sendEvent(Map<String, Object> event)
 	{
-		Socket client = socketClient.getClient();
-		if (client != null)
+		try
 		{
-			client.off(EVENT_BROADCAST);
+			RequestClient requestClient = getRequestClient();
+			CompletableFuture<String> request = requestClient.broadcast(event, Priority.HIGH);
+			supervisor.track(requestClient, request);
+			request.whenComplete((result, ex) -> {
+				if (ex != null)
+				{
+					log.warn("Event broadcast failed: " + ex);
+				}
+			});
+		}
+		catch (Exception e)
+		{
+			log.error("Event broadcast error: " + e);
 		}
 	}
 
 	/**
-	 * Sends broadcast request to the server via HTTP or socket.
+	 * Sends broadcast request to the server via HTTP or socket. Only the
+	 * fields that changed since the last broadcast are sent, along with
+	 * the next sequence number. Fields of a failed broadcast are sent again
+	 * with the next one, and kept in the outbox until delivered.
 	 *
 	 * @param data gimp data
 	 */
-	public void broadcast(Map<String, Object> data)
+	private void send(Map<String, Object> data)
 	{
+		Map<String, Object> delta = broadcastDelta.diff(data);
+		if (delta == null)
+		{
+			onStateSent();
+			return;
+		}
+		// Receivers compute speed from when locations were sent, not when they arrive
+		if (delta.containsKey(GimField.LOCATION.getKey()))
+		{
+			delta.put(GimField.TIMESTAMP.getKey(), serverClock.now());
+		}
 		try
 		{
 			RequestClient requestClient = getRequestClient();
-			String dataJson = gson.toJson(data);
-			requestClient.broadcast(dataJson).thenAccept((result) -> log.debug("Broadcast data: " + result));
+			CompletableFuture<String> request = requestClient.broadcast(delta);
+			supervisor.track(requestClient, request);
+			request.whenComplete((result, ex) -> {
+				if (ex != null)
+				{
+					log.warn("Broadcast failed: " + ex);
+					onBroadcastFailed(delta);
+					onStateSent();
+					return;
+				}
+				onStateSent();
+				outbox.acknowledge(delta);
+				log.debug("Broadcast data: " + result);
+			});
 		}
 		catch (Exception e)
 		{
 			log.error("Broadcast error: " + e);
+			onBroadcastFailed(delta);
+			onStateSent();
+		}
+	}
+
+	/**
+	 * Marks the fields of a failed broadcast dirty again, so their latest
+	 * values go out with the next broadcast, which is scheduled in case
+	 * nothing else changes. They're also kept in the outbox in case the
+	 * client is closed first.
+	 *
+	 * @param delta delta data that failed to send
+	 */
+	private void onBroadcastFailed(Map<String, Object> delta)
+	{
+		broadcastDelta.invalidate(delta);
+		outbox.add(delta);
+		synchronized (pendingData)
+		{
+			if (localGimp == null || !localGimp.getName().equals(delta.get(NAME)) || executor.isShutdown())
+			{
+				return;
+			}
+			for (String key : delta.keySet())
+			{
+				final GimField field = GimField.fromKey(key);
+				if (field != null && field != GimField.SEQ && field != GimField.TIMESTAMP && field != GimField.TILE_PING)
+				{
+					localGimp.markDirty(field);
+				}
+			}
+			executor.schedule(this::flush, RETRY_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Sends any changes still waiting for the broadcast window, then stops
+	 * the broadcast executor.
+	 */
+	public void shutdown()
+	{
+		synchronized (pendingData)
+		{
+			if (executor.isShutdown())
+			{
+				return;
+			}
+			executor.execute(() -> sendQueued(true));
+			executor.shutdown();
 		}
 	}
 
 	/**
-	 * Sends ping request to the server via HTTP or socket.
+	 * Moves the ping cursor forward to the given version, ignoring versions
+	 * older than the current cursor from overlapping pings.
 	 *
-	 * @return future of map: name => GimPlayer
+	 * @param version version of received ping data
 	 */
-	public CompletableFuture<Map<String, GimPlayer>> ping()
+	private synchronized void advancePingCursor(Long version)
 	{
-		RequestClient requestClient = getRequestClient();
+		if (version != null && (pingCursor == null || version > pingCursor))
+		{
+			pingCursor = version;
+			// Resumed sessions replay what was missed since this version
+			socketClient.resumeCursor = version;
+			streamClient.resumeCursor = version;
+		}
+	}
+
+	/**
+	 * Forgets the ping cursor, clock estimate and which fields have been sent,
+	 * so the next ping and broadcast with a different server are complete.
+	 * The local gimp's state is sent to the new server right away.
+	 */
+	private synchronized void resetServerState()
+	{
+		pingCursor = null;
+		serverClock.reset();
+		socketClient.resumeCursor = null;
+		streamClient.resumeCursor = null;
+		broadcastDelta.reset();
+		synchronized (pendingData)
+		{
+			if (localGimp == null || executor.isShutdown())
+			{
+				return;
+			}
+			localGimp.markAllDirty();
+			scheduleFlush(config.broadcastWindow());
+		}
+	}
+
+	/**
+	 * Forgets which fields the server has been sent, so the next broadcast
+	 * includes every field again.
+	 */
+	public void resetBroadcastDelta()
+	{
+		broadcastDelta.reset();
+	}
+
+	/**
+	 * Sends ping request to the server via HTTP or socket, passing the
+	 * version cursor of the latest ping data so the server only replies
+	 * with what changed since. While the hedged startup ping is pending,
+	 * its result is shared instead.
+	 *
+	 * @return future of ping data
+	 */
+	public CompletableFuture<PingData> ping()
+	{
+		final HedgedPing hedgedPing = startupPing;
+		if (hedgedPing != null && !hedgedPing.result.isDone())
+		{
+			return hedgedPing.result;
+		}
 		try
 		{
-			return requestClient.ping().thenApply((result) -> {
-				log.debug("Ping data: " + result);
-				return parsePingData(result);
-			});
+			return ping(getRequestClient());
 		}
 		catch (Exception e)
 		{
 			log.error("Ping error: " + e);
-			return null;
+			return failedPing(e);
+		}
+	}
+
+	/**
+	 * Sends the first ping after connecting on both HTTP and the realtime
+	 * client, which usually hasn't finished its handshake yet. HTTP goes
+	 * out right away, the realtime client joins once its session starts,
+	 * or right away if it's already connected, and whichever answers first
+	 * wins while the other is canceled.
+	 *
+	 * @return future of the first ping data
+	 */
+	public CompletableFuture<PingData> hedgedPing()
+	{
+		final HedgedPing hedgedPing = new HedgedPing();
+		startupPing = hedgedPing;
+		hedgedPing.add(() -> {
+			RequestClient requestClient = supervisor.getHttpClient();
+			if (requestClient == null)
+			{
+				throw new IllegalStateException("Server unreachable over HTTP, waiting before retrying");
+			}
+			return requestClient;
+		});
+		if (isConnected())
+		{
+			hedgedPing.add(this::getRealtimeClient);
+			hedgedPing.close();
+			return hedgedPing.result;
+		}
+		try
+		{
+			executor.schedule(hedgedPing::close, RequestClient.REQUEST_DEADLINE, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			hedgedPing.close();
+		}
+		return hedgedPing.result;
+	}
+
+	/**
+	 * Adds the realtime client to the pending startup ping, once its
+	 * session starts. Does nothing once the startup ping has settled or
+	 * stopped taking attempts.
+	 */
+	private void joinStartupPing()
+	{
+		final HedgedPing hedgedPing = startupPing;
+		if (hedgedPing != null)
+		{
+			hedgedPing.add(this::getRealtimeClient);
+			hedgedPing.close();
+		}
+	}
+
+	private RequestClient getRealtimeClient()
+	{
+		return socketClient.isConnected() ? socketClient : streamClient;
+	}
+
+	/**
+	 * Sends ping request with the given client. Canceling the returned
+	 * future cancels the request.
+	 *
+	 * @param requestClient client to ping with
+	 * @return future of ping data
+	 */
+	private CompletableFuture<PingData> ping(RequestClient requestClient)
+	{
+		final Long since = pingCursor;
+		CompletableFuture<String> request = requestClient.ping(since);
+		// Taken from the request, as a ping joining one in flight was sent before this call
+		final long sentAt = requestClient.getSentAt(request);
+		supervisor.track(requestClient, request);
+		CompletableFuture<PingData> pingData = request.thenApply((result) -> {
+			final long receivedAt = System.currentTimeMillis();
+			log.debug("Ping data: " + result + " (" + getInFlightCount() + " requests in flight)");
+			PingData data = parsePingData(result, since == null);
+			if (data.getTime() != null && sentAt >= 0)
+			{
+				serverClock.addSample(sentAt, receivedAt, data.getTime());
+			}
+			data.getGimps().values().forEach(this::toLocalTime);
+			advancePingCursor(data.getVersion());
+			return data;
+		});
+		pingData.whenComplete((result, ex) -> {
+			if (pingData.isCancelled())
+			{
+				request.cancel(false);
+			}
+		});
+		return pingData;
+	}
+
+	private static CompletableFuture<PingData> failedPing(Throwable e)
+	{
+		CompletableFuture<PingData> failedPing = new CompletableFuture<>();
+		failedPing.completeExceptionally(e);
+		return failedPing;
+	}
+
+	/**
+	 * Pings racing each other over different clients, resolved by the first
+	 * to succeed. Fails once every attempt has failed and no more can join.
+	 */
+	private class HedgedPing
+	{
+		private final CompletableFuture<PingData> result = new CompletableFuture<>();
+
+		private final List<CompletableFuture<PingData>> attempts = new ArrayList<>();
+
+		/* Whether more attempts may still join. */
+		private boolean open = true;
+
+		private Throwable lastError;
+
+		/**
+		 * Starts an attempt with the client, unless the race is already over.
+		 *
+		 * @param requestClient supplies the client to ping with
+		 */
+		synchronized void add(Supplier<RequestClient> requestClient)
+		{
+			if (!open || result.isDone())
+			{
+				return;
+			}
+			CompletableFuture<PingData> attempt;
+			try
+			{
+				attempt = ping(requestClient.get());
+			}
+			catch (Exception e)
+			{
+				log.debug("Hedged ping attempt failed to start: " + e);
+				attempt = failedPing(e);
+			}
+			attempts.add(attempt);
+			final CompletableFuture<PingData> started = attempt;
+			attempt.whenComplete((data, ex) -> onAttempt(started, data, ex));
+		}
+
+		/**
+		 * Stops more attempts from joining.
+		 */
+		synchronized void close()
+		{
+			open = false;
+			failIfLost();
+		}
+
+		private synchronized void onAttempt(CompletableFuture<PingData> attempt, PingData data, Throwable ex)
+		{
+			if (ex == null)
+			{
+				if (result.complete(data))
+				{
+					for (CompletableFuture<PingData> other : attempts)
+					{
+						if (other != attempt)
+						{
+							other.cancel(false);
+						}
+					}
+				}
+				return;
+			}
+			lastError = ex;
+			failIfLost();
+		}
+
+		private void failIfLost()
+		{
+			if (open || result.isDone())
+			{
+				return;
+			}
+			for (CompletableFuture<PingData> attempt : attempts)
+			{
+				if (!attempt.isDone())
+				{
+					return;
+				}
+			}
+			result.completeExceptionally(lastError != null ? lastError : new IllegalStateException("No ping attempts"));
 		}
 	}
 }
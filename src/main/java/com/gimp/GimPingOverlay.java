@@ -52,7 +52,7 @@ class GimPingOverlay extends Overlay
 	@Override
 	public Dimension render(Graphics2D graphics)
 	{
-		if (plugin.getGroup().isEmpty())
+		if (plugin.getGroup().getSnapshot().isEmpty())
 		{
 			return null;
 		}
@@ -24,22 +24,30 @@
  */
 package com.gimp;
 
+import com.gimp.gimps.GimChange;
 import com.gimp.gimps.GimLocation;
+import com.gimp.gimps.GimField;
 import com.gimp.gimps.GimPlayer;
+import com.gimp.gimps.GimPlayerSnapshot;
+import com.gimp.gimps.GimUpdate;
 import com.gimp.gimps.Group;
+import com.gimp.gimps.GroupSnapshot;
 import com.gimp.map.GimWorldMapPoint;
 import com.gimp.map.GimWorldMapPointManager;
+import com.gimp.requests.EventEmitter;
+import com.gimp.requests.PingData;
 import com.gimp.tasks.Task;
 import com.gimp.tasks.TaskManager;
 import com.google.gson.Gson;
 import com.google.inject.Provides;
-import io.socket.emitter.Emitter;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import javax.inject.Inject;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -64,7 +72,6 @@ import net.runelite.client.ui.ClientToolbar;
 import net.runelite.client.ui.NavigationButton;
 import net.runelite.client.ui.overlay.OverlayManager;
 import net.runelite.client.util.ImageUtil;
-import org.json.JSONObject;
 
 @Slf4j
 @PluginDescriptor(name = "GIMP")
@@ -108,7 +115,13 @@ public class GimPlugin extends Plugin
 	@Inject
 	private GimWorldMapPointManager gimWorldMapPointManager;
 
-	private GimBroadcastManager gimBroadcastManager;
+	private volatile GimBroadcastManager gimBroadcastManager;
+
+	/**
+	 * Set while hopping worlds with a loaded group, so the session can be
+	 * revalidated rather than reloaded once the GIM clan channel is rejoined.
+	 */
+	private volatile boolean hopping = false;
 
 	private GimPluginPanel panel;
 
@@ -122,41 +135,55 @@ public class GimPlugin extends Plugin
 	 */
 	private boolean frameToggle;
 
-	final private Emitter.Listener onBroadcastConnect = new Emitter.Listener()
+	/* Whether the map points need refreshing on the next tick, set when gimps join, leave, hop or move. */
+	private volatile boolean mapPointsDirty = true;
+
+	/* Whether any map point was still catching up to its gimp on the last tick. */
+	private boolean mapPointsMoving;
+
+	final private Consumer<GimChange> onMapChange = change -> mapPointsDirty = true;
+
+	final private EventEmitter.Listener onBroadcastDisconnect = new EventEmitter.Listener()
 	{
 		@Override
 		public void call(Object... args)
 		{
-			// Set connection status to connected
-			panel.setConnectionStatus(true);
+			// Set connection status to disconnected, unless the other realtime client is still connected
+			panel.setConnectionStatus(gimBroadcastManager != null && gimBroadcastManager.isConnected());
 		}
 	};
 
-	final private Emitter.Listener onBroadcastDisconnect = new Emitter.Listener()
+	final private EventEmitter.Listener onBroadcastConnect = new EventEmitter.Listener()
 	{
 		@Override
 		public void call(Object... args)
 		{
-			// Set connection status to disconnected
-			panel.setConnectionStatus(false);
+			clientThread.invoke(() -> {
+				// Update panel connection status
+				panel.setConnectionStatus(true);
+				final GimPlayer localGimp = group.getLocalGimp();
+				if (localGimp == null)
+				{
+					return;
+				}
+				// Update local gimp, then send out broadcast
+				group.localUpdate().thenRun(() -> broadcastFullUpdate(localGimp));
+			});
 		}
 	};
 
-	final private Emitter.Listener onBroadcastReconnect = new Emitter.Listener()
+	final private EventEmitter.Listener onBroadcastSession = new EventEmitter.Listener()
 	{
 		@Override
 		public void call(Object... args)
 		{
-			clientThread.invoke(() -> {
-				// Update panel connection status
-				panel.setConnectionStatus(true);
-				// Update local gimp
-				group.localUpdate();
-				// Send out broadcast
-				broadcastUpdate(group.getLocalGimp().getGimpData());
-				// Ping for initial gimp data
-				pingForUpdate();
-			});
+			// A resumed session replays the broadcasts missed while disconnected,
+			// so only ping for gimp data if the server started a new one
+			final boolean resumed = args.length > 0 && Boolean.TRUE.equals(args[0]);
+			if (!resumed)
+			{
+				clientThread.invoke(() -> pingForUpdate());
+			}
 		}
 	};
 
@@ -166,6 +193,11 @@ public class GimPlugin extends Plugin
 		log.debug("GIMP started!");
 		// Add the panel to the sidebar
 		addPanel();
+		// Refresh map points only when something they show has changed
+		group.getEvents().subscribe(onMapChange,
+			GimChange.Type.WORLD, GimChange.Type.GHOST_MODE,
+			GimChange.Type.LOCATION, GimChange.Type.MEMBERS
+		);
 		// If logged into ironman account, load gimp data and start broadcasting
 		ClanChannel gimClanChannel = client.getClanChannel(ClanID.GROUP_IRONMAN);
 		if (gimClanChannel != null && client.getGameState() == GameState.LOGGED_IN)
@@ -186,6 +218,7 @@ public class GimPlugin extends Plugin
 	{
 		log.debug("GIMP stopped!");
 		overlayManager.remove(gimPingOverlay);
+		group.getEvents().unsubscribe(onMapChange);
 		unload();
 		removePanel();
 	}
@@ -202,19 +235,43 @@ public class GimPlugin extends Plugin
 	{
 		stopBroadcast();
 		gimWorldMapPointManager.clear();
+		mapPointsDirty = true;
 		panel.unload();
 		group.unload();
 	}
 
+	/**
+	 * Revalidates a session kept alive through a world hop. The broadcast,
+	 * Group, panel and map points are reused, so only the local gimp data
+	 * is refreshed and whatever changed with the hop is broadcast.
+	 */
+	private void revalidate()
+	{
+		GimPlayer localGimp = group.getLocalGimp();
+		if (localGimp == null)
+		{
+			return;
+		}
+		log.debug("Revalidating session after hop");
+		// The broadcast delta drops fields that didn't change during the hop
+		group.localUpdate().thenRun(() -> broadcastFullUpdate(localGimp));
+	}
+
 	/* EVENTS */
 
 	@Subscribe
 	public void onGameStateChanged(GameStateChanged gameStateChanged)
 	{
-		// If game state changes to the login screen or hopping, or connection is lost, stop the broadcast
 		GameState gameState = gameStateChanged.getGameState();
-		if (gameState == GameState.LOGIN_SCREEN || gameState == GameState.HOPPING || gameState == GameState.CONNECTION_LOST)
+		// If hopping, keep the session alive to be revalidated once the clan channel is rejoined
+		if (gameState == GameState.HOPPING && group.isLoaded())
+		{
+			hopping = true;
+		}
+		// If game state changes to the login screen, or connection is lost, stop the broadcast
+		else if (gameState == GameState.LOGIN_SCREEN || gameState == GameState.HOPPING || gameState == GameState.CONNECTION_LOST)
 		{
+			hopping = false;
 			unload();
 		}
 	}
@@ -231,8 +288,21 @@ public class GimPlugin extends Plugin
 			{
 				String gimClanChannelName = gimClanChannel.getName();
 				log.debug("GIM clan joined: " + gimClanChannelName);
-				// Once group is loaded, we can display panel and start the broadcast
-				load();
+				// After a hop, reuse the session unless the group's members changed
+				if (hopping && group.matchesClan())
+				{
+					revalidate();
+				}
+				else
+				{
+					if (hopping)
+					{
+						unload();
+					}
+					// Once group is loaded, we can display panel and start the broadcast
+					load();
+				}
+				hopping = false;
 			}
 		}
 	}
@@ -264,11 +334,6 @@ public class GimPlugin extends Plugin
 				if (currentWorld != lastWorld)
 				{
 					updateWorld(gimp, currentWorld);
-					// If logging in or out, update last activity panel text
-					if (currentWorld == OFFLINE_WORLD || lastWorld == OFFLINE_WORLD)
-					{
-						panel.setLastActivity(gimp.getName(), gimp.getLastActivity(), currentWorld);
-					}
 				}
 			}
 		}
@@ -320,17 +385,22 @@ public class GimPlugin extends Plugin
 		// Check if one of GIMP's server address config value has changed
 		if (configChanged.getGroup().equals(CONFIG_GROUP) && configChanged.getKey().equals(SERVER_ADDRESS_KEY))
 		{
-			if (gimBroadcastManager != null && gimBroadcastManager.isSocketConnected())
+			if (gimBroadcastManager != null)
 			{
-				// If socket is currently connected, disconnect and let it reconnect with new address
-				log.debug("Server address changed, disconnecting socket client");
-				gimBroadcastManager.disconnectSocketClient();
+				// Drop the current connection and reconnect right away with the new address
+				log.debug("Server address changed, reconnecting");
+				gimBroadcastManager.reconnect();
 			}
 		}
 		else if (configChanged.getGroup().equals(CONFIG_GROUP) && configChanged.getKey().equals(GHOST_MODE))
 		{
 			updateGhostMode(config.ghostMode());
 		}
+		// Settings like "show self" change which map points are shown, so refresh them on the next tick
+		if (configChanged.getGroup().equals(CONFIG_GROUP))
+		{
+			mapPointsDirty = true;
+		}
 	}
 
 	@Subscribe
@@ -367,9 +437,11 @@ public class GimPlugin extends Plugin
 
 		// Get tile ping data and update gimp
 		final TilePing tilePing = new TilePing(selectedSceneTile.getWorldLocation());
-		Map<String, Object> tilePingData = group.getLocalGimp().getData();
-		tilePingData.put("tilePing", tilePing);
-		broadcastUpdate(tilePingData);
+		final GimBroadcastManager manager = gimBroadcastManager;
+		if (manager != null)
+		{
+			manager.broadcastTilePing(group.getLocalGimp().getName(), tilePing);
+		}
 
 		// Handle tile ping on client
 		onTilePing(group.getLocalGimp(), tilePing);
@@ -411,6 +483,7 @@ public class GimPlugin extends Plugin
 
 	private void removePanel()
 	{
+		panel.shutDown();
 		clientToolbar.removeNavigation(navButton);
 	}
 
@@ -424,20 +497,21 @@ public class GimPlugin extends Plugin
 	private void startBroadcast()
 	{
 		// Failsafe so we don't have clients with multiple ongoing socket connections
-		if (gimBroadcastManager != null && gimBroadcastManager.isSocketConnected())
+		if (gimBroadcastManager != null)
 		{
-			gimBroadcastManager.disconnectSocketClient();
+			gimBroadcastManager.shutdown();
+			gimBroadcastManager.disconnect();
 		}
 		log.debug("Starting broadcast...");
 		gimBroadcastManager = new GimBroadcastManager(group.getName(), config, gson);
-		gimBroadcastManager.connectSocketClient();
-		setConnectionListeners(false);
-		// Send out initial broadcast
-		broadcastUpdate(group.getLocalGimp().getGimpData());
-		// Ping for initial gimp data
-		pingForUpdate();
-		// Start listening for server broadcast
+		// Listeners are kept across reconnects, so they're registered once before connecting
+		setConnectionListeners();
 		listenForBroadcast();
+		gimBroadcastManager.connect();
+		// Send out initial broadcast
+		broadcastFullUpdate(group.getLocalGimp());
+		// Ping for initial gimp data over HTTP and the socket, whichever is faster
+		handlePing(gimBroadcastManager.hedgedPing(), true);
 		// Start interval-based broadcast tasks
 		startIntervalTasks();
 	}
@@ -445,16 +519,15 @@ public class GimPlugin extends Plugin
 	/**
 	 * Sets connection status and calls other side effects based on
 	 * connection event.
-	 *
-	 * @param onReconnect whether connection is to reconnect
 	 */
-	private void setConnectionListeners(boolean onReconnect)
+	private void setConnectionListeners()
 	{
-		Emitter.Listener onConnect = onReconnect ? onBroadcastReconnect : onBroadcastConnect;
-		gimBroadcastManager.onBroadcastConnect(onConnect);
-		// Use disconnect handler for connect error event b/c we just
+		gimBroadcastManager.onBroadcastConnect(onBroadcastConnect);
+		gimBroadcastManager.onBroadcastSession(onBroadcastSession);
+		// Heartbeats only carry data if broadcasts went missing, so apply it like any ping
+		gimBroadcastManager.onHeartbeat(heartbeat -> handlePing(heartbeat, false));
+		// Connect errors are handled with disconnects, since we just
 		// want to set connection status to disconnected
-		gimBroadcastManager.onBroadcastConnectError(onBroadcastDisconnect);
 		gimBroadcastManager.onBroadcastDisconnect(onBroadcastDisconnect);
 	}
 
@@ -464,23 +537,25 @@ public class GimPlugin extends Plugin
 	 */
 	private void listenForBroadcast()
 	{
-		gimBroadcastManager.listen(new Emitter.Listener()
+		gimBroadcastManager.listen(new EventEmitter.Listener()
 		{
+			// Broadcasts are handled one at a time, so a single update is reused for all of them
+			private final GimUpdate gimpData = new GimUpdate();
+
 			@Override
-			public void call(Object... args)
+			public synchronized void call(Object... args)
 			{
-				JSONObject dataJson = (JSONObject) args[0];
-				log.debug(dataJson.toString());
-				GimPlayer gimpData = gimBroadcastManager.parseBroadcastData(dataJson.toString());
-				handleUpdate(gimpData);
+				if (gimBroadcastManager.parseBroadcastData(args, gimpData))
+				{
+					handleUpdate(gimpData);
+				}
 			}
 		});
 	}
 
 	/**
-	 * Starts all broadcast interval tasks, including handling socket
-	 * reconnects, broadcasting location, and pinging for gimp data
-	 * via HTTP if sockets fail.
+	 * Starts all broadcast interval tasks, including broadcasting
+	 * location, and pinging for gimp data via HTTP if sockets fail.
 	 */
 	private void startIntervalTasks()
 	{
@@ -489,25 +564,15 @@ public class GimPlugin extends Plugin
 		if (localPlayer != null)
 		{
 			long FIVE_SECONDS = 5000;
-			Task socketConnectTask = new Task(FIVE_SECONDS * 2)
-			{
-				@Override
-				public void run()
-				{
-					if (!gimBroadcastManager.isSocketConnected())
-					{
-						gimBroadcastManager.connectSocketClient();
-						setConnectionListeners(true);
-					}
-				}
-			};
 			Task locationBroadcastTask = new Task(FIVE_SECONDS)
 			{
 				@Override
 				public void run()
 				{
+					// The local player is replaced on each hop, so it's looked up every run
+					final Player localPlayer = client.getLocalPlayer();
 					final GimPlayer localGimp = group.getLocalGimp();
-					if (localGimp != null)
+					if (localPlayer != null && localGimp != null)
 					{
 						GimLocation gimLocation = new GimLocation(localPlayer.getWorldLocation());
 						GimLocation lastLocation = localGimp.getLocation();
@@ -523,7 +588,7 @@ public class GimPlugin extends Plugin
 				@Override
 				public long delay()
 				{
-					if (gimBroadcastManager.isSocketConnected())
+					if (gimBroadcastManager.isConnected())
 					{
 						return period / 2;
 					}
@@ -535,8 +600,8 @@ public class GimPlugin extends Plugin
 				@Override
 				public void run()
 				{
-					// If socket is not connected, fetch data (instead of waiting for broadcast)
-					if (!gimBroadcastManager.isSocketConnected())
+					// If neither socket nor event stream is connected, fetch data (instead of waiting for broadcast)
+					if (!gimBroadcastManager.isConnected())
 					{
 						pingForUpdate();
 					}
@@ -553,8 +618,8 @@ public class GimPlugin extends Plugin
 					{
 						nextDelay = nextDelay / 4;
 					}
-					// Half delay if socket is connected: 1.25 secs if map open, 5 secs if closed
-					if (gimBroadcastManager.isSocketConnected())
+					// Half delay if socket or event stream is connected: 1.25 secs if map open, 5 secs if closed
+					if (gimBroadcastManager.isConnected())
 					{
 						nextDelay = nextDelay / 2;
 					}
@@ -567,40 +632,69 @@ public class GimPlugin extends Plugin
 				public void run()
 				{
 					frameToggle = !frameToggle;
-					for (GimPlayer gimp : group.getGimps())
+					// Nothing to do while the group is idle and every map point has caught up
+					if (!mapPointsDirty && !mapPointsMoving)
 					{
-						if (gimp != null)
+						return;
+					}
+					// Cleared before reading the snapshot, so a change published meanwhile is refreshed next tick
+					final boolean changed = mapPointsDirty;
+					mapPointsDirty = false;
+					final GroupSnapshot snapshot = group.getSnapshot();
+					boolean moving = false;
+					for (GimPlayerSnapshot gimp : snapshot.getGimps())
+					{
+						if (changed)
 						{
 							refreshMapPointVisibility(gimp);
-							if (gimWorldMapPointManager.hasPoint(gimp.getName()))
+						}
+						if (gimWorldMapPointManager.hasPoint(gimp.getName()))
+						{
+							final GimWorldMapPoint gimWorldMapPoint = gimWorldMapPointManager.getPoint(gimp.getName());
+							final boolean moved = gimWorldMapPoint.moveTowardPlayer(frameToggle, gimp);
+							if (moved)
 							{
-								final GimWorldMapPoint gimWorldMapPoint = gimWorldMapPointManager.getPoint(gimp.getName());
-								final boolean moved = gimWorldMapPoint.moveTowardPlayer(frameToggle);
-								if (moved)
-								{
-									gimWorldMapPoint.addFootstep(gimWorldMapPointManager, config.showFootsteps());
-								}
+								gimWorldMapPoint.addFootstep(gimWorldMapPointManager, config.showFootsteps());
 							}
+							moving |= !gimWorldMapPoint.isAtPlayer(gimp);
 						}
 					}
+					mapPointsMoving = moving;
 				}
 			};
 			taskManager.schedule(locationBroadcastTask, 0);
 			taskManager.schedule(httpFallbackPingTask, FIVE_SECONDS / 2);
-			taskManager.schedule(socketConnectTask, FIVE_SECONDS * 2);
 			taskManager.schedule(tickMapPoints, 0);
 		}
 	}
 
 	/**
-	 * Broadcasts any gimp data to the server, invoking the request in a thread
-	 * separate from the client thread.
+	 * Broadcasts the fields of the local gimp changed since its last
+	 * broadcast, invoking the request in a thread separate from the client
+	 * thread. Changes applied by the Group's writer may get here after the
+	 * broadcast has stopped, so it's skipped then.
+	 *
+	 * @param localGimp local gimp
+	 */
+	private void broadcastUpdate(GimPlayer localGimp)
+	{
+		final GimBroadcastManager manager = gimBroadcastManager;
+		if (manager != null)
+		{
+			manager.broadcast(localGimp);
+		}
+	}
+
+	/**
+	 * Broadcasts all of the local gimp's data. The broadcast baseline still
+	 * drops fields the server already has.
 	 *
-	 * @param gimpData gimp data
+	 * @param localGimp local gimp
 	 */
-	private void broadcastUpdate(Map<String, Object> gimpData)
+	private void broadcastFullUpdate(GimPlayer localGimp)
 	{
-		gimBroadcastManager.broadcast(gimpData);
+		localGimp.markAllDirty();
+		broadcastUpdate(localGimp);
 	}
 
 	/**
@@ -610,20 +704,58 @@ public class GimPlugin extends Plugin
 	 */
 	private void pingForUpdate()
 	{
-		gimBroadcastManager.ping().whenCompleteAsync((result, ex) -> {
+		handlePing(gimBroadcastManager.ping(), false);
+	}
+
+	/**
+	 * Handles the result of a ping asynchronously, updating the panel with
+	 * each gimp's data as soon as it arrives.
+	 *
+	 * @param ping      future of ping data
+	 * @param showOnMap whether to show gimps on the map right away, rather
+	 *                  than on the next map point tick
+	 */
+	private void handlePing(CompletableFuture<PingData> ping, boolean showOnMap)
+	{
+		ping.whenCompleteAsync((result, ex) -> {
 			if (result != null)
 			{
+				final Map<String, GimUpdate> gimps = result.getGimps();
+				final GimBroadcastManager manager = gimBroadcastManager;
+				final long snapshotTime = result.getTime() != null && manager != null ? manager.toLocalTime(result.getTime()) : 0;
+				// If a full snapshot has no data for the local gimp, the server has lost
+				// our state (e.g. restarted), so send everything with the next broadcast
+				final GimPlayer localGimp = group.getLocalGimp();
+				if (result.isFull() && localGimp != null && gimps.get(localGimp.getName()) == null)
+				{
+					gimBroadcastManager.resetBroadcastDelta();
+					broadcastFullUpdate(localGimp);
+				}
 				for (GimPlayer gimp : group.getGimps())
 				{
-					GimPlayer gimpData = result.get(gimp.getName());
-					// TODO: Some data for the local gimp needs to come from the server, so
-					// we comment out this condition. Instead, we need to implement a method
-					// that hydrates empty data on a GimPlayer but does not overwrite existing.
-					if (gimpData != null/*  && gimp != group.getLocalGimp()*/)
+					GimUpdate gimpData = gimps.get(gimp.getName());
+					// Group merges by field version, so snapshots older than the broadcasts
+					// already applied are skipped, and the local gimp is only filled in
+					if (gimpData != null)
 					{
-						handleUpdate(gimpData);
+						handleUpdate(gimpData, snapshotTime);
 					}
 				}
+				if (showOnMap)
+				{
+					// Map points are only touched on the task thread
+					taskManager.schedule(new Task(0)
+					{
+						@Override
+						public void run()
+						{
+							for (GimPlayerSnapshot gimp : group.getSnapshot().getGimps())
+							{
+								refreshMapPointVisibility(gimp);
+							}
+						}
+					}, 0);
+				}
 			}
 		});
 	}
@@ -639,25 +771,42 @@ public class GimPlugin extends Plugin
 		if (gimBroadcastManager != null)
 		{
 			gimBroadcastManager.stopListening();
-			gimBroadcastManager.disconnectSocketClient();
+			gimBroadcastManager.shutdown();
+			gimBroadcastManager.disconnect();
 		}
 	}
 
 	/* UPDATE FUNCTIONS */
 
+	/**
+	 * Handles a broadcast from the server.
+	 *
+	 * @param gimpData update data
+	 * @see #handleUpdate(GimUpdate, long)
+	 */
+	private void handleUpdate(GimUpdate gimpData)
+	{
+		handleUpdate(gimpData, 0);
+	}
+
 	/**
 	 * Handles an update from the server, maps gimp data to the
-	 * corresponding gimp and updates the panel.
+	 * corresponding gimp and updates the panel. The update may be
+	 * reused once this returns.
 	 *
-	 * @param gimpData GimPlayer data
+	 * @param gimpData     update data
+	 * @param snapshotTime local time the server made the snapshot holding
+	 *                     the update, or 0 for a broadcast or if unknown
 	 */
-	private void handleUpdate(GimPlayer gimpData)
+	private void handleUpdate(GimUpdate gimpData, long snapshotTime)
 	{
-		group.update(gimpData);
-		panel.updateGimpData(gimpData);
-		if (gimpData.getTilePing() != null)
+		if (!group.update(gimpData, snapshotTime))
+		{
+			return;
+		}
+		GimPlayer gimp = group.getGimp(gimpData.getName());
+		if (gimpData.has(GimField.TILE_PING))
 		{
-			GimPlayer gimp = group.getGimp(gimpData.getName());
 			onTilePing(gimp, gimpData.getTilePing());
 		}
 	}
@@ -674,12 +823,9 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set it locally first, to prevent loops
-			localGimp.setHp(hp);
-			panel.updateGimpData(localGimp);
-			// Broadcast new HP value
-			Map<String, Object> hpData = localGimp.getData();
-			hpData.put("hp", hp);
-			broadcastUpdate(hpData);
+			group.setHp(localGimp.getName(), hp)
+				// Broadcast new HP value
+				.thenRun(() -> broadcastUpdate(localGimp));
 		}
 	}
 
@@ -695,12 +841,9 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set it locally first, to prevent loops
-			localGimp.setMaxHp(maxHp);
-			panel.updateGimpData(localGimp);
-			// Broadcast new max HP value
-			Map<String, Object> hpData = localGimp.getData();
-			hpData.put("maxHp", maxHp);
-			broadcastUpdate(hpData);
+			group.setMaxHp(localGimp.getName(), maxHp)
+				// Broadcast new max HP value
+				.thenRun(() -> broadcastUpdate(localGimp));
 		}
 	}
 
@@ -716,12 +859,9 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set it locally first, to prevent loops
-			localGimp.setPrayer(prayer);
-			panel.updateGimpData(localGimp);
-			// Broadcast new prayer value
-			Map<String, Object> prayerData = localGimp.getData();
-			prayerData.put("prayer", prayer);
-			broadcastUpdate(prayerData);
+			group.setPrayer(localGimp.getName(), prayer)
+				// Broadcast new prayer value
+				.thenRun(() -> broadcastUpdate(localGimp));
 		}
 	}
 
@@ -737,12 +877,9 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set it locally first, to prevent loops
-			localGimp.setMaxPrayer(maxPrayer);
-			panel.updateGimpData(localGimp);
-			// Broadcast new max prayer value
-			Map<String, Object> prayerData = localGimp.getData();
-			prayerData.put("maxPrayer", maxPrayer);
-			broadcastUpdate(prayerData);
+			group.setMaxPrayer(localGimp.getName(), maxPrayer)
+				// Broadcast new max prayer value
+				.thenRun(() -> broadcastUpdate(localGimp));
 		}
 	}
 
@@ -754,7 +891,6 @@ public class GimPlugin extends Plugin
 	private void updateWorld(GimPlayer gimp, int world)
 	{
 		group.setWorld(gimp.getName(), world);
-		panel.setWorld(gimp.getName(), world);
 	}
 
 	/**
@@ -770,10 +906,17 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set new ghost mode locally before broadcast
-			group.setGhostMode(localGimp.getName(), ghostMode);
-			Map<String, Object> ghostModeData = ghostMode ? localGimp.getData() : localGimp.getGimpData(); // if ghostMode off, broadcast all data
-			ghostModeData.put("ghostMode", ghostMode);
-			broadcastUpdate(ghostModeData);
+			group.setGhostMode(localGimp.getName(), ghostMode).thenRun(() -> {
+				// If ghost mode is off, broadcast all data
+				if (ghostMode)
+				{
+					broadcastUpdate(localGimp);
+				}
+				else
+				{
+					broadcastFullUpdate(localGimp);
+				}
+			});
 		}
 	}
 
@@ -789,15 +932,13 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set location locally before broadcast
-			group.setLocation(localGimp.getName(), gimLocation);
-			panel.updateGimpData(localGimp);
-			// Do not broadcast location at all if ghost mode is active
-			if (!config.ghostMode())
-			{
-				Map<String, Object> data = localGimp.getData();
-				data.put("location", gimLocation.getLocation());
-				broadcastUpdate(data);
-			}
+			group.setLocation(localGimp.getName(), gimLocation).thenRun(() -> {
+				// Do not broadcast location at all if ghost mode is active
+				if (!config.ghostMode())
+				{
+					broadcastUpdate(localGimp);
+				}
+			});
 		}
 	}
 
@@ -807,11 +948,8 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set activity locally before broadcast
-			localGimp.setLastActivity(activity);
-			panel.updateGimpData(localGimp);
-			Map<String, Object> activityData = localGimp.getData();
-			activityData.put("lastActivity", activity);
-			broadcastUpdate(activityData);
+			group.setLastActivity(localGimp.getName(), activity)
+				.thenRun(() -> broadcastUpdate(localGimp));
 		}
 	}
 
@@ -821,10 +959,11 @@ public class GimPlugin extends Plugin
 	 *
 	 * @param gimp the player whose map point is to be refreshed
 	 */
-	private void refreshMapPointVisibility(GimPlayer gimp)
+	private void refreshMapPointVisibility(GimPlayerSnapshot gimp)
 	{
 		final String name = gimp.getName();
-		final boolean isLocalGimp = gimp == group.getLocalGimp();
+		final GimPlayer localGimp = group.getLocalGimp();
+		final boolean isLocalGimp = localGimp != null && localGimp.getName().equals(name);
 		final boolean shouldShow =
 			// Condition 1: Player must have a location
 			gimp.getLocation() != null
@@ -837,7 +976,11 @@ public class GimPlugin extends Plugin
 		// Add or remove the player's world map point accordingly
 		if (shouldShow && !gimWorldMapPointManager.hasPoint(name))
 		{
-			gimWorldMapPointManager.addPoint(gimp);
+			final GimPlayer player = group.getGimp(name);
+			if (player != null)
+			{
+				gimWorldMapPointManager.addPoint(player);
+			}
 		}
 		else if (!shouldShow && gimWorldMapPointManager.hasPoint(name))
 		{
@@ -28,15 +28,23 @@ import net.runelite.client.config.Config;
 import net.runelite.client.config.ConfigGroup;
 import net.runelite.client.config.ConfigItem;
 import net.runelite.client.config.ConfigSection;
+import net.runelite.client.config.Range;
+import net.runelite.client.config.Units;
 
 @ConfigGroup("gimp")
 public interface GimPluginConfig extends Config
 {
+	enum Transport
+	{
+		SOCKET_IO,
+		WEBSOCKET
+	}
+
 	@ConfigItem(
 		position = 0,
 		keyName = "serverAddress",
 		name = "Server Address",
-		description = "Address of the remote GIMP server, check the GitHub for a public server address"
+		description = "Address of the remote GIMP server, check the GitHub for a public server address. Separate backup server addresses with commas, the fastest one is used"
 	)
 	default String serverAddress()
 	{
@@ -105,4 +113,49 @@ public interface GimPluginConfig extends Config
 	{
 		return false;
 	}
+
+	@Range(
+		max = 5000
+	)
+	@Units(Units.MILLISECONDS)
+	@ConfigItem(
+		position = 7,
+		section = developerSection,
+		keyName = "broadcastWindow",
+		name = "Broadcast Window",
+		description = "Time to collect changes before broadcasting them together, tile pings are always sent right away"
+	)
+	default int broadcastWindow()
+	{
+		return 600;
+	}
+
+	@ConfigItem(
+		position = 8,
+		section = developerSection,
+		keyName = "transport",
+		name = "Transport",
+		description = "Realtime connection to the server, WebSocket needs a server that supports it"
+	)
+	default Transport transport()
+	{
+		return Transport.SOCKET_IO;
+	}
+
+	@Range(
+		min = 10,
+		max = 300
+	)
+	@Units(Units.SECONDS)
+	@ConfigItem(
+		position = 9,
+		section = developerSection,
+		keyName = "silenceTimeout",
+		name = "Silence Timeout",
+		description = "Time without hearing from the server before the connection is treated as lost, and updates fall back to HTTP"
+	)
+	default int silenceTimeout()
+	{
+		return 30;
+	}
 }
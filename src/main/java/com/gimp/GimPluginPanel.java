@@ -41,6 +41,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.Consumer;
 import javax.inject.Inject;
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
@@ -114,7 +115,10 @@ public class GimPluginPanel extends PluginPanel
 	private int defaultTab;
 
 	/* The currently selected gimp */
-	private String selectedGimp;
+	private volatile String selectedGimp;
+
+	/* Shows changes to the selected gimp, posted by the group */
+	final private Consumer<GimChange> onGimpChange = this::onGimpChange;
 
 	/* Used to prevent users from switching gimp tabs while the results are loading */
 	private boolean loading = false;
@@ -129,12 +133,25 @@ public class GimPluginPanel extends PluginPanel
 	public GimPluginPanel(GimPlugin plugin)
 	{
 		this.group = plugin.getGroup();
+		group.getEvents().subscribe(onGimpChange,
+			GimChange.Type.HP, GimChange.Type.MAX_HP,
+			GimChange.Type.PRAYER, GimChange.Type.MAX_PRAYER,
+			GimChange.Type.WORLD, GimChange.Type.LAST_ACTIVITY
+		);
 
 		setBackground(ColorScheme.DARK_GRAY_COLOR);
 		setBorder(new EmptyBorder(10, 10, 10, 10));
 		setLayout(new BorderLayout());
 	}
 
+	/**
+	 * Stops showing changes to the group, once the panel is removed.
+	 */
+	public void shutDown()
+	{
+		group.getEvents().unsubscribe(onGimpChange);
+	}
+
 	public void load()
 	{
 		final Player localPlayer = client.getLocalPlayer();
@@ -448,9 +465,12 @@ public class GimPluginPanel extends PluginPanel
 		loading = true;
 
 		// Display gimp data
-		GimPlayer gimp = group.getGimp(gimpName);
 		SwingUtilities.invokeLater(() -> {
-			applyGimpData(gimp);
+			final GimPlayerSnapshot gimp = group.getSnapshot().getGimp(gimpName);
+			if (gimp != null)
+			{
+				applyGimpData(gimp);
+			}
 
 			// Apply hiscore date separately
 			for (Map.Entry<HiscoreSkill, JLabel> entry : skillLabels.entrySet())
@@ -480,35 +500,49 @@ public class GimPluginPanel extends PluginPanel
 			// Successful player lookup
 			loading = false;
 			SwingUtilities.invokeLater(() -> {
-				fillGimpStatusData(gimp, result);
+				final GimPlayerSnapshot gimp = group.getSnapshot().getGimp(gimpName);
+				if (gimp != null)
+				{
+					fillGimpStatusData(gimp, result);
+				}
 				applyHiscoreResult(result);
 			});
 		});
 	}
 
-	public void updateGimpData(GimPlayer gimpData)
+	/**
+	 * Shows a change to the selected gimp. Changes to other gimps are
+	 * dropped before reaching the UI thread, and values are read from the
+	 * change's snapshot, so pairs like HP and max HP always match.
+	 *
+	 * @param change change posted by the group
+	 */
+	private void onGimpChange(GimChange change)
 	{
+		if (!change.getName().equals(selectedGimp))
+		{
+			return;
+		}
+		final GimPlayerSnapshot gimp = change.getGimp();
 		SwingUtilities.invokeLater(() -> {
-			if (selectedGimp != null && selectedGimp.equals(gimpData.getName()))
+			switch (change.getType())
 			{
-				GimPlayer gimp = group.getGimp(selectedGimp);
-				if (gimpData.getHp() != null || gimpData.getMaxHp() != null)
-				{
-					int hpValue = gimpData.getHp() != null ? gimpData.getHp() : gimp.getHp();
-					int maxHpValue = gimpData.getMaxHp() != null ? gimpData.getMaxHp() : gimp.getMaxHp();
-					setHpBar(selectedGimp, hpValue, maxHpValue);
-				}
-				if (gimpData.getPrayer() != null || gimpData.getMaxPrayer() != null)
-				{
-					int prayerValue = gimpData.getPrayer() != null ? gimpData.getPrayer() : gimp.getPrayer();
-					int maxPrayerValue = gimpData.getMaxPrayer() != null ? gimpData.getMaxPrayer() : gimp.getMaxPrayer();
-					setPrayerBar(selectedGimp, prayerValue, maxPrayerValue);
-				}
-				if (gimpData.getLastActivity() != null)
-				{
-					setLastActivity(selectedGimp, gimpData.getLastActivity(), gimp.getWorld());
-				}
-				// Update more gimp data...
+				case HP:
+				case MAX_HP:
+					setHpBar(gimp.getName(), gimp.getHp(), gimp.getMaxHp());
+					break;
+				case PRAYER:
+				case MAX_PRAYER:
+					setPrayerBar(gimp.getName(), gimp.getPrayer(), gimp.getMaxPrayer());
+					break;
+				case WORLD:
+					setWorld(gimp.getName(), gimp.getWorld());
+					// Logging in or out changes the last activity text
+					setLastActivity(gimp.getName(), gimp.getLastActivity(), gimp.getWorld());
+					break;
+				case LAST_ACTIVITY:
+					setLastActivity(gimp.getName(), gimp.getLastActivity(), gimp.getWorld());
+					break;
 			}
 		});
 	}
@@ -581,7 +615,7 @@ public class GimPluginPanel extends PluginPanel
 		}
 	}
 
-	private void applyGimpData(GimPlayer gimp)
+	private void applyGimpData(GimPlayerSnapshot gimp)
 	{
 		assert SwingUtilities.isEventDispatchThread();
 
@@ -599,7 +633,7 @@ public class GimPluginPanel extends PluginPanel
 	 *
 	 * @param result HiscoreResult
 	 */
-	private void fillGimpStatusData(GimPlayer gimp, HiscoreResult result)
+	private void fillGimpStatusData(GimPlayerSnapshot gimp, HiscoreResult result)
 	{
 		assert SwingUtilities.isEventDispatchThread();
 
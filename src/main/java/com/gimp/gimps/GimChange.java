@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.gimps;
+
+import lombok.Getter;
+
+/**
+ * A change to a gimp in the Group, posted to the Group's events once the
+ * snapshot holding it is published.
+ */
+@Getter
+public class GimChange
+{
+	/**
+	 * What changed, which is also the topic the change is posted to.
+	 */
+	public enum Type
+	{
+		HP,
+		MAX_HP,
+		PRAYER,
+		MAX_PRAYER,
+		CUSTOM_STATUS,
+		WORLD,
+		LOCATION,
+		GHOST_MODE,
+		LAST_ACTIVITY,
+		/* The gimp joined or left the Group. */
+		MEMBERS
+	}
+
+	private final Type type;
+
+	/* Snapshot of the gimp after the change, or before it for a gimp that left. */
+	private final GimPlayerSnapshot gimp;
+
+	public GimChange(Type type, GimPlayerSnapshot gimp)
+	{
+		this.type = type;
+		this.gimp = gimp;
+	}
+
+	public String getName()
+	{
+		return gimp.getName();
+	}
+}
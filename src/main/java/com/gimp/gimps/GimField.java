@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.gimps;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * Fields of GimPlayer data that can be broadcast. The ordinal of each field
+ * is its bit in a field presence mask, so new fields must only be appended.
+ */
+public enum GimField
+{
+	SEQ("seq", false),
+	HP("hp", true),
+	MAX_HP("maxHp", true),
+	PRAYER("prayer", true),
+	MAX_PRAYER("maxPrayer", true),
+	CUSTOM_STATUS("customStatus", true),
+	GHOST_MODE("ghostMode", true),
+	/* Left out rather than cleared while hidden by ghost mode. */
+	LOCATION("location", false),
+	LAST_ACTIVITY("lastActivity", true),
+	TILE_PING("tilePing", false),
+	/* Time the update was sent, in server clock milliseconds. */
+	TIMESTAMP("time", false);
+
+	private static final Map<String, GimField> FIELDS_BY_KEY = new HashMap<>();
+
+	static
+	{
+		for (GimField field : values())
+		{
+			FIELDS_BY_KEY.put(field.key, field);
+		}
+	}
+
+	/* Key of the field in broadcast data. */
+	@Getter
+	private final String key;
+
+	/* Whether a null value is sent, clearing the field for receivers. */
+	@Getter
+	private final boolean clearable;
+
+	GimField(String key, boolean clearable)
+	{
+		this.key = key;
+		this.clearable = clearable;
+	}
+
+	/**
+	 * Finds the field for a key in broadcast data.
+	 *
+	 * @param key broadcast data key
+	 * @return field, or null if the key isn't a field
+	 */
+	public static GimField fromKey(String key)
+	{
+		return FIELDS_BY_KEY.get(key);
+	}
+
+	public int getBit()
+	{
+		return 1 << ordinal();
+	}
+}
@@ -28,9 +28,6 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.coords.WorldPoint;
 
-import java.util.HashMap;
-import java.util.Map;
-
 @Slf4j
 public class GimLocation
 {
@@ -64,20 +61,6 @@ public class GimLocation
 		this.plane = plane;
 	}
 
-	/**
-	 * Maps member coordinates x, y, and plane to HashMap.
-	 *
-	 * @return map: coordinateName => coordinateValue
-	 */
-	public Map<String, Integer> getLocation()
-	{
-		Map<String, Integer> location = new HashMap<>();
-		location.put(Coordinate.x.toString(), x);
-		location.put(Coordinate.y.toString(), y);
-		location.put(Coordinate.plane.toString(), plane);
-		return location;
-	}
-
 	public WorldPoint toWorldPoint()
 	{
 		return new WorldPoint(x, y, plane);
@@ -94,4 +77,20 @@ public class GimLocation
 			&& (loc1.getY() == loc2.getY())
 			&& (loc1.getPlane() == loc2.getPlane());
 	}
+
+	/**
+	 * Locations are sent in broadcast data as is, so the broadcast baseline
+	 * compares them by their coordinates.
+	 */
+	@Override
+	public boolean equals(Object other)
+	{
+		return other instanceof GimLocation && compare(this, (GimLocation) other);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return (x * 31 + y) * 31 + plane;
+	}
 }
@@ -32,9 +32,14 @@ import net.runelite.client.hiscore.HiscoreResult;
 import net.runelite.client.plugins.party.messages.TilePing;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Data of a member of the group. Only changed through the Group, on its
+ * writer thread, and its fields are volatile so every thread reads the
+ * latest values.
+ */
 @Slf4j
 public class GimPlayer
 {
@@ -43,61 +48,100 @@ public class GimPlayer
 
 	@Setter
 	@Getter
-	private Integer hp;
+	private volatile Integer hp;
 
 	@Setter
 	@Getter
-	private Integer maxHp;
+	private volatile Integer maxHp;
 
 	@Setter
 	@Getter
-	private Integer prayer;
+	private volatile Integer prayer;
 
 	@Setter
 	@Getter
-	private Integer maxPrayer;
+	private volatile Integer maxPrayer;
 
 	@Setter
 	@Getter
-	private HiscoreResult hiscores;
+	private volatile HiscoreResult hiscores;
 
 	@Setter
 	@Getter
-	private String customStatus;
+	private volatile String customStatus;
 
 	@Setter
 	@Getter
-	private TilePing tilePing;
+	private volatile TilePing tilePing;
 
 	@Setter
 	@Getter
-	private Integer world;
+	private volatile Integer world;
 
 	@Nullable
 	@Getter
-	private GimLocation location;
+	private volatile GimLocation location;
 
 	@Setter
 	@Getter
-	private Boolean ghostMode;
+	private volatile Boolean ghostMode;
 
 	@Setter
 	@Getter
-	private String lastActivity = IN_GAME_ACTIVITY;
+	private volatile String lastActivity = IN_GAME_ACTIVITY;
 
 	public static final String IN_GAME_ACTIVITY = "IN_GAME_ACTIVITY";
 
+	/* Copy of GimField.values(), which returns a new array on each call. */
+	private static final GimField[] FIELDS = GimField.values();
+
+	/* Mask of the fields that make up a gimp's broadcast data. */
+	private static final int BROADCAST_FIELDS = GimField.HP.getBit()
+		| GimField.MAX_HP.getBit()
+		| GimField.PRAYER.getBit()
+		| GimField.MAX_PRAYER.getBit()
+		| GimField.CUSTOM_STATUS.getBit()
+		| GimField.GHOST_MODE.getBit()
+		| GimField.LOCATION.getBit()
+		| GimField.LAST_ACTIVITY.getBit();
+
+	/**
+	 * Sender sequence number of the last broadcast applied to this gimp.
+	 */
+	@Setter
+	@Getter
+	private volatile Long seq;
+
+	/**
+	 * Sender sequence number of the latest value of each field, by field
+	 * ordinal, or 0 if the value came from an update without one.
+	 */
+	private final long[] fieldVersions = new long[GimField.values().length];
+
+	/**
+	 * Local time the latest value of each field was applied, by field
+	 * ordinal, or 0 if it never was.
+	 */
+	private final long[] fieldTimes = new long[GimField.values().length];
+
+	/**
+	 * Fields changed locally since they were last queued for a broadcast,
+	 * as a mask of GimField bits.
+	 */
+	private final AtomicInteger dirty = new AtomicInteger();
+
 	/**
 	 * Speed of this player in tiles per second.
 	 */
 	@Getter
-	private double speed;
+	private volatile double speed;
 
 	/**
-	 * Timestamp of the last location update (in system time milliseconds).
-	 * Used for computing the effective "speed" of the player.
+	 * Timestamp of the last location update (in system time milliseconds),
+	 * when the sender sent it if known. Used for computing the effective
+	 * "speed" of the player.
 	 */
-	private long locationTimestamp;
+	private volatile long locationTimestamp;
 
 	@Getter
 	private final Color color;
@@ -111,11 +155,24 @@ public class GimPlayer
 	}
 
 	public void setLocation(GimLocation location)
+	{
+		setLocation(location, System.currentTimeMillis());
+	}
+
+	/**
+	 * Sets the location, computing speed from the time the location was
+	 * sent rather than when it arrived, so updates that arrive bunched up
+	 * don't distort it.
+	 *
+	 * @param location  new location
+	 * @param timestamp time the location was sent, in system time milliseconds
+	 */
+	public void setLocation(GimLocation location, long timestamp)
 	{
 		// Determine the "speed" of the player
-		if (this.location != null)
+		if (this.location != null && timestamp > locationTimestamp)
 		{
-			final long millisSinceLastLocation = System.currentTimeMillis() - locationTimestamp;
+			final long millisSinceLastLocation = timestamp - locationTimestamp;
 			final double distance = this.location.getDistanceTo(location);
 			if (this.location.plane != location.plane)
 			{
@@ -131,43 +188,131 @@ public class GimPlayer
 		// Set location to new GimLocation
 		this.location = location;
 		// Update timestamp
-		locationTimestamp = System.currentTimeMillis();
+		locationTimestamp = timestamp;
 	}
 
-	public Map<String, Object> getData()
+	/**
+	 * Checks whether a value from an update with the given sequence number
+	 * is newer than the current value of a field. Updates without one
+	 * replace values that came without one too, and replace sequenced
+	 * values only if they come from a snapshot the server made after the
+	 * current value was applied, as the server had that value by then.
+	 *
+	 * @param field        field of the value
+	 * @param version      sender sequence number of the update, or 0 if none
+	 * @param snapshotTime local time the server made the snapshot holding
+	 *                     the update, or 0 if it isn't from a snapshot
+	 * @return whether the value should replace the current one
+	 */
+	public boolean isNewer(GimField field, long version, long snapshotTime)
 	{
-		Map<String, Object> data = new HashMap<>();
-		data.put("name", name);
-		return data;
+		final long current = fieldVersions[field.ordinal()];
+		if (version > current || (version == 0 && current == 0))
+		{
+			return true;
+		}
+		return version == 0 && snapshotTime > fieldTimes[field.ordinal()];
 	}
 
-	public boolean shouldIncludeLocation()
+	/**
+	 * Records that a field was set from an update with the given sequence
+	 * number. Values without one keep the sequence number of the value they
+	 * replaced, so broadcasts older than that are still rejected.
+	 *
+	 * @param field   field that was set
+	 * @param version sender sequence number of the update, or 0 if none
+	 */
+	public void setVersion(GimField field, long version)
 	{
-		return ghostMode == null || !ghostMode;
+		if (version > 0)
+		{
+			fieldVersions[field.ordinal()] = version;
+		}
+		fieldTimes[field.ordinal()] = System.currentTimeMillis();
+	}
+
+	/**
+	 * Marks a field as changed locally, so its value goes out with the next
+	 * broadcast. Changes made before then are sent once, with the latest
+	 * value.
+	 *
+	 * @param field changed field
+	 */
+	public void markDirty(GimField field)
+	{
+		dirty.accumulateAndGet(field.getBit(), (mask, bit) -> mask | bit);
+	}
+
+	/**
+	 * Marks every field this gimp broadcasts as changed, so all of its data
+	 * goes out with the next broadcast, e.g. after connecting.
+	 */
+	public void markAllDirty()
+	{
+		dirty.accumulateAndGet(BROADCAST_FIELDS, (mask, fields) -> mask | fields);
 	}
 
 	/**
-	 * Retrieves GimPlayer data for a broadcast. Suppresses and/or
-	 * modifies data for this purpose.
+	 * Gets and clears the fields changed since the last call.
 	 *
-	 * @return GimPlayer broadcast-ready data
+	 * @return mask of GimField bits
 	 */
-	public Map<String, Object> getGimpData()
+	public int takeDirty()
 	{
-		Map<String, Object> gimpData = new HashMap<>();
-		gimpData.put("name", name);
-		gimpData.put("hp", hp);
-		gimpData.put("maxHp", maxHp);
-		gimpData.put("prayer", prayer);
-		gimpData.put("maxPrayer", maxPrayer);
-		gimpData.put("customStatus", customStatus);
-		gimpData.put("ghostMode", ghostMode);
-		// Don't get location if ghostMode is active
-		if (location != null && this.shouldIncludeLocation())
+		return dirty.getAndSet(0);
+	}
+
+	/**
+	 * Puts the current values of the given fields into broadcast data,
+	 * suppressing the location if ghost mode is active. Locations are put
+	 * as is, and the codecs write their coordinates.
+	 *
+	 * @param mask mask of GimField bits
+	 * @param data broadcast data to put the values into
+	 */
+	public void putFields(int mask, Map<String, Object> data)
+	{
+		for (GimField field : FIELDS)
 		{
-			gimpData.put("location", location.getLocation());
+			if ((mask & field.getBit()) == 0)
+			{
+				continue;
+			}
+			switch (field)
+			{
+				case HP:
+					data.put(field.getKey(), hp);
+					break;
+				case MAX_HP:
+					data.put(field.getKey(), maxHp);
+					break;
+				case PRAYER:
+					data.put(field.getKey(), prayer);
+					break;
+				case MAX_PRAYER:
+					data.put(field.getKey(), maxPrayer);
+					break;
+				case CUSTOM_STATUS:
+					data.put(field.getKey(), customStatus);
+					break;
+				case GHOST_MODE:
+					data.put(field.getKey(), ghostMode);
+					break;
+				case LOCATION:
+					if (location != null && shouldIncludeLocation())
+					{
+						data.put(field.getKey(), location);
+					}
+					break;
+				case LAST_ACTIVITY:
+					data.put(field.getKey(), lastActivity);
+					break;
+			}
 		}
-		gimpData.put("lastActivity", lastActivity);
-		return gimpData;
+	}
+
+	public boolean shouldIncludeLocation()
+	{
+		return ghostMode == null || !ghostMode;
 	}
 }
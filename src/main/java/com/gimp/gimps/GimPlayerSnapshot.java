@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.gimps;
+
+import java.awt.Color;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import lombok.Getter;
+
+/**
+ * Immutable copy of a GimPlayer's data, taken by the Group's writer thread
+ * between changes, so every value in it belongs to the same state.
+ */
+@Getter
+public class GimPlayerSnapshot
+{
+	private final String name;
+
+	private final Color color;
+
+	private final Integer hp;
+
+	private final Integer maxHp;
+
+	private final Integer prayer;
+
+	private final Integer maxPrayer;
+
+	private final String customStatus;
+
+	private final Integer world;
+
+	private final GimLocation location;
+
+	private final Boolean ghostMode;
+
+	private final String lastActivity;
+
+	private final double speed;
+
+	GimPlayerSnapshot(GimPlayer gimp)
+	{
+		name = gimp.getName();
+		color = gimp.getColor();
+		hp = gimp.getHp();
+		maxHp = gimp.getMaxHp();
+		prayer = gimp.getPrayer();
+		maxPrayer = gimp.getMaxPrayer();
+		customStatus = gimp.getCustomStatus();
+		world = gimp.getWorld();
+		location = gimp.getLocation();
+		ghostMode = gimp.getGhostMode();
+		lastActivity = gimp.getLastActivity();
+		speed = gimp.getSpeed();
+	}
+
+	public boolean shouldIncludeLocation()
+	{
+		return ghostMode == null || !ghostMode;
+	}
+
+	/**
+	 * Gets what changed since an earlier snapshot of the same gimp. Speed
+	 * only changes along with location, so it counts as a location change.
+	 *
+	 * @param previous earlier snapshot
+	 * @return types of the changes, empty if nothing changed
+	 */
+	Set<GimChange.Type> getChanges(GimPlayerSnapshot previous)
+	{
+		Set<GimChange.Type> changes = EnumSet.noneOf(GimChange.Type.class);
+		if (!Objects.equals(hp, previous.hp))
+		{
+			changes.add(GimChange.Type.HP);
+		}
+		if (!Objects.equals(maxHp, previous.maxHp))
+		{
+			changes.add(GimChange.Type.MAX_HP);
+		}
+		if (!Objects.equals(prayer, previous.prayer))
+		{
+			changes.add(GimChange.Type.PRAYER);
+		}
+		if (!Objects.equals(maxPrayer, previous.maxPrayer))
+		{
+			changes.add(GimChange.Type.MAX_PRAYER);
+		}
+		if (!Objects.equals(customStatus, previous.customStatus))
+		{
+			changes.add(GimChange.Type.CUSTOM_STATUS);
+		}
+		if (!Objects.equals(world, previous.world))
+		{
+			changes.add(GimChange.Type.WORLD);
+		}
+		if (!isSameLocation(location, previous.location) || speed != previous.speed)
+		{
+			changes.add(GimChange.Type.LOCATION);
+		}
+		if (!Objects.equals(ghostMode, previous.ghostMode))
+		{
+			changes.add(GimChange.Type.GHOST_MODE);
+		}
+		if (!Objects.equals(lastActivity, previous.lastActivity))
+		{
+			changes.add(GimChange.Type.LAST_ACTIVITY);
+		}
+		return changes;
+	}
+
+	/**
+	 * Checks that a gimp's data is the same as in this snapshot, i.e. a
+	 * snapshot of it would have no changes, without taking one.
+	 *
+	 * @param gimp gimp this snapshot was taken of
+	 * @return whether nothing changed since
+	 */
+	boolean matches(GimPlayer gimp)
+	{
+		return Objects.equals(hp, gimp.getHp())
+			&& Objects.equals(maxHp, gimp.getMaxHp())
+			&& Objects.equals(prayer, gimp.getPrayer())
+			&& Objects.equals(maxPrayer, gimp.getMaxPrayer())
+			&& Objects.equals(customStatus, gimp.getCustomStatus())
+			&& Objects.equals(world, gimp.getWorld())
+			&& isSameLocation(location, gimp.getLocation())
+			&& speed == gimp.getSpeed()
+			&& Objects.equals(ghostMode, gimp.getGhostMode())
+			&& Objects.equals(lastActivity, gimp.getLastActivity());
+	}
+
+	private static boolean isSameLocation(GimLocation location, GimLocation other)
+	{
+		if (location == null || other == null)
+		{
+			return location == other;
+		}
+		return GimLocation.compare(location, other);
+	}
+}
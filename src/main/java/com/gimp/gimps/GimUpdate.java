@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.gimps;
+
+import lombok.Getter;
+import net.runelite.client.plugins.party.messages.TilePing;
+
+/**
+ * Holds the fields of one remote update to a GimPlayer. Decoders write
+ * straight into an instance, which is reset and reused for the next
+ * update, so an instance must only be used by one thread at a time.
+ */
+public class GimUpdate
+{
+	@Getter
+	private String name;
+
+	/* Bits of the GimFields set by this update. */
+	private int fieldMask;
+
+	/* Bits of the GimFields this update clears, a subset of fieldMask. */
+	private int clearedMask;
+
+	@Getter
+	private long seq;
+
+	@Getter
+	private int hp;
+
+	@Getter
+	private int maxHp;
+
+	@Getter
+	private int prayer;
+
+	@Getter
+	private int maxPrayer;
+
+	@Getter
+	private String customStatus;
+
+	@Getter
+	private boolean ghostMode;
+
+	private int locationX;
+
+	private int locationY;
+
+	private int locationPlane;
+
+	@Getter
+	private String lastActivity;
+
+	private int tilePingX;
+
+	private int tilePingY;
+
+	private int tilePingPlane;
+
+	@Getter
+	private long timestamp;
+
+	/**
+	 * Clears all fields so the instance can hold the next update.
+	 */
+	public void reset()
+	{
+		name = null;
+		fieldMask = 0;
+		clearedMask = 0;
+		customStatus = null;
+		lastActivity = null;
+	}
+
+	/**
+	 * Checks whether the update sets a field.
+	 *
+	 * @param field GimPlayer field
+	 * @return whether the field is set
+	 */
+	public boolean has(GimField field)
+	{
+		return (fieldMask & field.getBit()) != 0;
+	}
+
+	/**
+	 * Checks whether the update clears a field, i.e. sets it to null.
+	 *
+	 * @param field GimPlayer field
+	 * @return whether the field is cleared
+	 */
+	public boolean isCleared(GimField field)
+	{
+		return (clearedMask & field.getBit()) != 0;
+	}
+
+	/**
+	 * Sets a field to null. Fields that can't be cleared are left unset.
+	 *
+	 * @param field GimPlayer field
+	 */
+	public void clear(GimField field)
+	{
+		if (!field.isClearable())
+		{
+			return;
+		}
+		if (field == GimField.CUSTOM_STATUS)
+		{
+			customStatus = null;
+		}
+		else if (field == GimField.LAST_ACTIVITY)
+		{
+			lastActivity = null;
+		}
+		fieldMask |= field.getBit();
+		clearedMask |= field.getBit();
+	}
+
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+
+	public void setSeq(long seq)
+	{
+		this.seq = seq;
+		fieldMask |= GimField.SEQ.getBit();
+	}
+
+	public void setHp(int hp)
+	{
+		this.hp = hp;
+		fieldMask |= GimField.HP.getBit();
+	}
+
+	public void setMaxHp(int maxHp)
+	{
+		this.maxHp = maxHp;
+		fieldMask |= GimField.MAX_HP.getBit();
+	}
+
+	public void setPrayer(int prayer)
+	{
+		this.prayer = prayer;
+		fieldMask |= GimField.PRAYER.getBit();
+	}
+
+	public void setMaxPrayer(int maxPrayer)
+	{
+		this.maxPrayer = maxPrayer;
+		fieldMask |= GimField.MAX_PRAYER.getBit();
+	}
+
+	public void setCustomStatus(String customStatus)
+	{
+		this.customStatus = customStatus;
+		fieldMask |= GimField.CUSTOM_STATUS.getBit();
+	}
+
+	public void setGhostMode(boolean ghostMode)
+	{
+		this.ghostMode = ghostMode;
+		fieldMask |= GimField.GHOST_MODE.getBit();
+	}
+
+	public void setLocation(int x, int y, int plane)
+	{
+		locationX = x;
+		locationY = y;
+		locationPlane = plane;
+		fieldMask |= GimField.LOCATION.getBit();
+	}
+
+	public void setLastActivity(String lastActivity)
+	{
+		this.lastActivity = lastActivity;
+		fieldMask |= GimField.LAST_ACTIVITY.getBit();
+	}
+
+	public void setTilePing(int x, int y, int plane)
+	{
+		tilePingX = x;
+		tilePingY = y;
+		tilePingPlane = plane;
+		fieldMask |= GimField.TILE_PING.getBit();
+	}
+
+	public void setTimestamp(long timestamp)
+	{
+		this.timestamp = timestamp;
+		fieldMask |= GimField.TIMESTAMP.getBit();
+	}
+
+	/**
+	 * Creates a GimLocation from the update's location. Only valid if the
+	 * update has a location.
+	 *
+	 * @return new GimLocation
+	 */
+	public GimLocation getLocation()
+	{
+		return new GimLocation(locationX, locationY, locationPlane);
+	}
+
+	/**
+	 * Creates a TilePing from the update's tile ping. Only valid if the
+	 * update has a tile ping.
+	 *
+	 * @return new TilePing
+	 */
+	public TilePing getTilePing()
+	{
+		return new TilePing(new GimLocation(tilePingX, tilePingY, tilePingPlane).toWorldPoint());
+	}
+}
@@ -45,7 +45,16 @@ import net.runelite.client.hiscore.HiscoreResult;
 import net.runelite.client.ui.overlay.worldmap.WorldMapPointManager;
 import javax.inject.Inject;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -54,8 +63,12 @@ public class Group
 	// TODO: Let the player choose their own color?
 	private final static Color[] GIMP_COLORS = new Color[]{new Color(48, 227, 192), new Color(241, 120, 68), new Color(78, 54, 236), new Color(239, 208, 21), new Color(201, 21, 217)};
 
+	/* Gimps in clan member order, which is also their color slot. Copied on write, so readers can iterate it on any thread. */
 	@Getter
-	final private List<GimPlayer> gimps = new ArrayList<>();
+	final private List<GimPlayer> gimps = new CopyOnWriteArrayList<>();
+
+	/* Gimps by sanitized name, for constant time lookups on the tick and broadcast paths. */
+	final private Map<String, GimPlayer> gimpsByName = new ConcurrentHashMap<>();
 
 	@Inject
 	private Client client;
@@ -72,14 +85,197 @@ public class Group
 	@Inject
 	private HiscoreManager hiscoreManager;
 
+	/* Fields the local client reads from the game, so its own values are the freshest. */
+	private static final Set<GimField> LOCAL_FIELDS = EnumSet.of(
+		GimField.HP,
+		GimField.MAX_HP,
+		GimField.PRAYER,
+		GimField.MAX_PRAYER,
+		GimField.GHOST_MODE,
+		GimField.LOCATION,
+		GimField.LAST_ACTIVITY
+	);
+
 	@Getter
-	private boolean loaded = false;
+	private volatile boolean loaded = false;
 
 	@Getter
 	private String name;
 
 	final private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
 
+	/* Changes to the gimps, posted after each snapshot. */
+	@Getter
+	final private GroupEvents events = new GroupEvents();
+
+	/* Latest state of the Group, for readers on any thread. */
+	final private AtomicReference<GroupSnapshot> snapshot = new AtomicReference<>(GroupSnapshot.EMPTY);
+
+	/* The only thread that changes the Group or its GimPlayers. */
+	private volatile Thread writerThread;
+
+	/* Applies changes one at a time, in the order they're made. */
+	final private ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+		writerThread = new Thread(runnable, "gimp-group-writer");
+		writerThread.setDaemon(true);
+		return writerThread;
+	});
+
+	/**
+	 * Applies a change to the Group on the writer thread, and waits for it.
+	 * Changes come from the client, socket, timer and pool threads, so they
+	 * are applied one at a time by a single thread instead of racing each
+	 * other. Changes made from the writer thread run right away, and a new
+	 * snapshot is published once the outermost change is done.
+	 *
+	 * @param command change to apply
+	 * @param <T>     type of the result
+	 * @return result of the change
+	 */
+	public <T> T write(Supplier<T> command)
+	{
+		if (Thread.currentThread() == writerThread)
+		{
+			return command.get();
+		}
+		try
+		{
+			return CompletableFuture.supplyAsync(() -> {
+				T result = command.get();
+				publish();
+				return result;
+			}, writer).join();
+		}
+		catch (CompletionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	public void write(Runnable command)
+	{
+		write(() -> {
+			command.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Queues a change to the Group on the writer thread without waiting for
+	 * it, for callers like the client thread that mustn't stall on a merge
+	 * or a slow subscriber. Changes made from the writer thread run right
+	 * away.
+	 *
+	 * @param command change to apply
+	 * @return future completed once the change is applied and published
+	 */
+	public CompletableFuture<Void> submit(Runnable command)
+	{
+		if (Thread.currentThread() == writerThread)
+		{
+			command.run();
+			return CompletableFuture.completedFuture(null);
+		}
+		CompletableFuture<Void> change = CompletableFuture.runAsync(() -> {
+			command.run();
+			publish();
+		}, writer);
+		change.whenComplete((result, ex) -> {
+			if (ex != null)
+			{
+				log.warn("Group change failed: " + ex);
+			}
+		});
+		return change;
+	}
+
+	/**
+	 * Gets the latest published state of the Group. Its values are never
+	 * changed, so it can be read on any thread without locking.
+	 *
+	 * @return latest snapshot
+	 */
+	public GroupSnapshot getSnapshot()
+	{
+		return snapshot.get();
+	}
+
+	/**
+	 * Publishes a snapshot of the gimps, with a new version, unless their
+	 * data is the same as in the current one. Then posts what changed to
+	 * the events. Only called by the writer.
+	 */
+	private void publish()
+	{
+		final GroupSnapshot current = snapshot.get();
+		// Most changes, e.g. a tick's location, leave the gimps as they were, so nothing is copied for them
+		if (isPublished(current))
+		{
+			return;
+		}
+		List<GimPlayerSnapshot> gimpSnapshots = new ArrayList<>(gimps.size());
+		List<GimChange> changes = new ArrayList<>();
+		for (GimPlayer gimp : gimps)
+		{
+			final GimPlayerSnapshot gimpSnapshot = new GimPlayerSnapshot(gimp);
+			gimpSnapshots.add(gimpSnapshot);
+			final GimPlayerSnapshot previous = current.getGimp(gimp.getName());
+			if (previous == null)
+			{
+				changes.add(new GimChange(GimChange.Type.MEMBERS, gimpSnapshot));
+				continue;
+			}
+			for (GimChange.Type type : gimpSnapshot.getChanges(previous))
+			{
+				changes.add(new GimChange(type, gimpSnapshot));
+			}
+		}
+		for (GimPlayerSnapshot previous : current.getGimps())
+		{
+			if (gimpSnapshots.stream().noneMatch(gimp -> gimp.getName().equals(previous.getName())))
+			{
+				changes.add(new GimChange(GimChange.Type.MEMBERS, previous));
+			}
+		}
+		if (changes.isEmpty())
+		{
+			return;
+		}
+		snapshot.set(new GroupSnapshot(current.getVersion() + 1, gimpSnapshots));
+		for (GimChange change : changes)
+		{
+			events.post(change);
+		}
+	}
+
+	/**
+	 * Checks that a snapshot has the same gimps as the Group, with the same
+	 * data.
+	 *
+	 * @param current published snapshot
+	 * @return whether publishing would change nothing
+	 */
+	private boolean isPublished(GroupSnapshot current)
+	{
+		if (current.getGimps().size() != gimps.size())
+		{
+			return false;
+		}
+		for (GimPlayer gimp : gimps)
+		{
+			final GimPlayerSnapshot previous = current.getGimp(gimp.getName());
+			if (previous == null || !previous.matches(gimp))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Poll for completion of future containing result of loaded clan settings.
 	 *
@@ -119,14 +315,21 @@ public class Group
 			{
 				final ClanMember member = clanMembers.get(i);
 				// For some reason, clan member names with spaces use the no-break
-				// space character, so we must sanitize it
-				String name = sanitize(member.getName());
+				// space character, so we must sanitize it. Names are interned, since the
+				// same few are compared and hashed on every tick
+				String name = sanitize(member.getName()).intern();
 				int world = getCurrentWorld(name);
-				gimps.add(new GimPlayer(name, world, GIMP_COLORS[i]));
+				GimPlayer gimp = new GimPlayer(name, world, GIMP_COLORS[i]);
+				write(() -> {
+					gimps.add(gimp);
+					gimpsByName.put(name, gimp);
+				});
 			}
 			// Load local gimp data, including hiscores
 			localLoad().whenCompleteAsync((r, e) -> {
-				loaded = true;
+				write(() -> {
+					loaded = true;
+				});
 				loadingResult.complete(null);
 			});
 		});
@@ -157,70 +360,266 @@ public class Group
 	}
 
 	/**
-	 * Maps a raw GimPlayer data object to a GimPlayer in the Group.
+	 * Merges a remote broadcast into the GimPlayer in the Group.
 	 *
-	 * @param gimpData a GimPlayer instance holding broadcast data
+	 * @param gimpData update holding broadcast data
+	 * @return whether the update was applied, false if all its fields were stale
+	 * @see #update(GimUpdate, long)
 	 */
-	public void update(GimPlayer gimpData)
+	public boolean update(GimUpdate gimpData)
 	{
-		for (GimPlayer gimp : gimps)
+		return update(gimpData, 0);
+	}
+
+	/**
+	 * Merges a remote update into the GimPlayer in the Group. Updates come
+	 * from both broadcasts and ping snapshots, in any order, so each field
+	 * is only set if the update's sequence number is newer than that of the
+	 * field's current value. The local gimp's own game data is always the
+	 * freshest, so remote values only fill it in where it's missing.
+	 * <p>
+	 * Servers echo the sender's sequence number as "seq" in snapshots when
+	 * they have it. Snapshots from servers that don't can still replace
+	 * sequenced values, as long as the server made them after those values
+	 * were applied, so clients that only poll don't freeze on the values
+	 * last broadcast over the socket.
+	 *
+	 * @param gimpData     update holding broadcast or snapshot data
+	 * @param snapshotTime local time the server made the snapshot holding
+	 *                     the update, or 0 for a broadcast or if unknown
+	 * @return whether the update was applied, false if all its fields were stale
+	 */
+	public boolean update(GimUpdate gimpData, long snapshotTime)
+	{
+		return write(() -> merge(gimpData, snapshotTime));
+	}
+
+	private boolean merge(GimUpdate gimpData, long snapshotTime)
+	{
+		final GimPlayer gimp = getGimp(gimpData.getName());
+		if (gimp == null)
 		{
-			String gimpName = gimpData.getName();
-			if (gimp.getName().equals(gimpName))
+			return false;
+		}
+		return merge(gimp, gimpData, snapshotTime, gimp == getLocalGimp());
+	}
+
+	/**
+	 * Merges an update into a GimPlayer field by field, by the rules of
+	 * {@link #update(GimUpdate, long)}.
+	 *
+	 * @param gimp         gimp to update
+	 * @param gimpData     update holding broadcast or snapshot data
+	 * @param snapshotTime local time the server made the snapshot holding
+	 *                     the update, or 0 for a broadcast or if unknown
+	 * @param local        whether the gimp is the local player
+	 * @return whether the update was applied, false if all its fields were stale
+	 */
+	static boolean merge(GimPlayer gimp, GimUpdate gimpData, long snapshotTime, boolean local)
+	{
+		final long version = gimpData.has(GimField.SEQ) ? gimpData.getSeq() : 0;
+		boolean applied = false;
+		boolean rejected = false;
+		for (GimField field : GimField.values())
+		{
+			if (field == GimField.SEQ || field == GimField.TIMESTAMP || field == GimField.TILE_PING || !gimpData.has(field))
 			{
-				if (gimpData.getHp() != null)
-				{
-					gimp.setHp(gimpData.getHp());
-				}
-				if (gimpData.getMaxHp() != null)
-				{
-					gimp.setMaxHp(gimpData.getMaxHp());
-				}
-				if (gimpData.getPrayer() != null)
-				{
-					gimp.setPrayer(gimpData.getPrayer());
-				}
-				if (gimpData.getMaxPrayer() != null)
-				{
-					gimp.setMaxPrayer(gimpData.getMaxPrayer());
-				}
-				if (gimpData.getCustomStatus() != null)
-				{
-					gimp.setCustomStatus(gimpData.getCustomStatus());
-				}
-				// Must set ghost mode before location!
-				if (gimpData.getGhostMode() != null)
-				{
-					setGhostMode(gimpName, gimpData.getGhostMode());
-				}
-				if (gimpData.getLocation() != null)
+				continue;
+			}
+			final boolean newer = local && LOCAL_FIELDS.contains(field)
+				? !hasValue(gimp, field)
+				: gimp.isNewer(field, version, snapshotTime);
+			if (!newer)
+			{
+				rejected = true;
+				continue;
+			}
+			applyField(gimp, field, gimpData);
+			gimp.setVersion(field, version);
+			applied = true;
+		}
+		if (version > 0 && (gimp.getSeq() == null || version > gimp.getSeq()))
+		{
+			gimp.setSeq(version);
+		}
+		return applied || !rejected;
+	}
+
+	/**
+	 * Sets a field of a GimPlayer from an update. Fields are applied in
+	 * declaration order, so ghost mode is set before location.
+	 *
+	 * @param gimp     gimp to update
+	 * @param field    field to set
+	 * @param gimpData update holding the value
+	 */
+	private static void applyField(GimPlayer gimp, GimField field, GimUpdate gimpData)
+	{
+		if (gimpData.isCleared(field))
+		{
+			clearField(gimp, field);
+			return;
+		}
+		switch (field)
+		{
+			case HP:
+				gimp.setHp(gimpData.getHp());
+				break;
+			case MAX_HP:
+				gimp.setMaxHp(gimpData.getMaxHp());
+				break;
+			case PRAYER:
+				gimp.setPrayer(gimpData.getPrayer());
+				break;
+			case MAX_PRAYER:
+				gimp.setMaxPrayer(gimpData.getMaxPrayer());
+				break;
+			case CUSTOM_STATUS:
+				gimp.setCustomStatus(gimpData.getCustomStatus());
+				break;
+			case GHOST_MODE:
+				gimp.setGhostMode(gimpData.isGhostMode());
+				break;
+			case LOCATION:
+				if (gimpData.has(GimField.TIMESTAMP))
 				{
-					setLocation(gimpName, gimpData.getLocation());
+					gimp.setLocation(gimpData.getLocation(), gimpData.getTimestamp());
 				}
-				if (gimpData.getLastActivity() != null)
+				else
 				{
-					gimp.setLastActivity(gimpData.getLastActivity());
+					gimp.setLocation(gimpData.getLocation());
 				}
+				break;
+			case LAST_ACTIVITY:
+				gimp.setLastActivity(gimpData.getLastActivity());
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Sets a field of a GimPlayer to null.
+	 *
+	 * @param gimp  gimp to update
+	 * @param field field to clear
+	 */
+	private static void clearField(GimPlayer gimp, GimField field)
+	{
+		switch (field)
+		{
+			case HP:
+				gimp.setHp(null);
+				break;
+			case MAX_HP:
+				gimp.setMaxHp(null);
+				break;
+			case PRAYER:
+				gimp.setPrayer(null);
+				break;
+			case MAX_PRAYER:
+				gimp.setMaxPrayer(null);
+				break;
+			case CUSTOM_STATUS:
+				gimp.setCustomStatus(null);
+				break;
+			case GHOST_MODE:
+				gimp.setGhostMode(null);
+				break;
+			case LAST_ACTIVITY:
+				gimp.setLastActivity(null);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private static boolean hasValue(GimPlayer gimp, GimField field)
+	{
+		switch (field)
+		{
+			case HP:
+				return gimp.getHp() != null;
+			case MAX_HP:
+				return gimp.getMaxHp() != null;
+			case PRAYER:
+				return gimp.getPrayer() != null;
+			case MAX_PRAYER:
+				return gimp.getMaxPrayer() != null;
+			case CUSTOM_STATUS:
+				return gimp.getCustomStatus() != null;
+			case GHOST_MODE:
+				return gimp.getGhostMode() != null;
+			case LOCATION:
+				return gimp.getLocation() != null;
+			case LAST_ACTIVITY:
+				return gimp.getLastActivity() != null;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Checks whether the loaded gimps still match the members of the GIM
+	 * clan, e.g. after a world hop reloads the clan settings.
+	 *
+	 * @return true if the clan has the same name and members as the Group
+	 */
+	public boolean matchesClan()
+	{
+		ClanSettings gimClanSettings = client.getClanSettings(ClanID.GROUP_IRONMAN);
+		if (!loaded || gimClanSettings == null || !gimClanSettings.getName().equals(name))
+		{
+			return false;
+		}
+		List<String> memberNames = new ArrayList<>();
+		for (ClanMember member : gimClanSettings.getMembers())
+		{
+			memberNames.add(member.getName());
+		}
+		return isSameMembers(gimps, memberNames);
+	}
+
+	/**
+	 * Checks whether the clan members are the given gimps, each in the same
+	 * slot, since the slot sets a gimp's color.
+	 *
+	 * @param gimps       gimps in slot order
+	 * @param memberNames names of the clan members in slot order, unsanitized
+	 * @return true if the members are the gimps in the same order
+	 */
+	static boolean isSameMembers(List<GimPlayer> gimps, List<String> memberNames)
+	{
+		if (memberNames.size() != gimps.size())
+		{
+			return false;
+		}
+		for (int i = 0; i < memberNames.size(); i++)
+		{
+			if (!sanitize(memberNames.get(i)).equals(gimps.get(i).getName()))
+			{
+				return false;
 			}
 		}
+		return true;
 	}
 
 	public void unload()
 	{
-		gimps.clear();
-		loaded = false;
+		write(() -> {
+			gimps.clear();
+			gimpsByName.clear();
+			loaded = false;
+		});
 	}
 
 	public GimPlayer getGimp(String name)
 	{
-		for (GimPlayer gimp : gimps)
+		if (name == null)
 		{
-			if (gimp.getName().equals(name))
-			{
-				return gimp;
-			}
+			return null;
 		}
-		return null;
+		return gimpsByName.get(sanitize(name));
 	}
 
 	public GimPlayer getLocalGimp()
@@ -235,22 +634,34 @@ public class Group
 
 	/**
 	 * Updates the local GimPlayer if that player exists using data
-	 * available on the client.
+	 * available on the client. The values are read on the calling thread
+	 * and applied without waiting.
+	 *
+	 * @return future completed once the update is applied
 	 */
-	public void localUpdate()
+	public CompletableFuture<Void> localUpdate()
 	{
 		Player localPlayer = client.getLocalPlayer();
 		GimPlayer localGimp = getLocalGimp();
 		if (localPlayer != null && localGimp != null)
 		{
-			localGimp.setHp(client.getBoostedSkillLevel(Skill.HITPOINTS));
-			localGimp.setMaxHp(client.getRealSkillLevel(Skill.HITPOINTS));
-			localGimp.setPrayer(client.getBoostedSkillLevel(Skill.PRAYER));
-			localGimp.setMaxPrayer(client.getRealSkillLevel(Skill.PRAYER));
-			localGimp.setGhostMode(config.ghostMode());
-			setWorld(localGimp.getName(), client.getWorld());
-			setLocation(localGimp.getName(), new GimLocation(localPlayer.getWorldLocation()));
+			final int hp = client.getBoostedSkillLevel(Skill.HITPOINTS);
+			final int maxHp = client.getRealSkillLevel(Skill.HITPOINTS);
+			final int prayer = client.getBoostedSkillLevel(Skill.PRAYER);
+			final int maxPrayer = client.getRealSkillLevel(Skill.PRAYER);
+			final int world = client.getWorld();
+			final GimLocation location = new GimLocation(localPlayer.getWorldLocation());
+			return submit(() -> {
+				localGimp.setHp(hp);
+				localGimp.setMaxHp(maxHp);
+				localGimp.setPrayer(prayer);
+				localGimp.setMaxPrayer(maxPrayer);
+				localGimp.setGhostMode(config.ghostMode());
+				setWorld(localGimp.getName(), world);
+				setLocation(localGimp.getName(), location);
+			});
 		}
+		return CompletableFuture.completedFuture(null);
 	}
 
 	public List<String> getNames()
@@ -266,22 +677,24 @@ public class Group
 	/**
 	 * Sets a GimPlayer's location using the provided location data and
 	 * updates its icon on the world map if the gimp is online and doesn't
-	 * have ghost mode enabled.
+	 * have ghost mode enabled. Marks it for the next broadcast.
 	 *
 	 * @param name     GimPlayer name
 	 * @param location GimPlayer location data
+	 * @return future completed once the change is applied
 	 */
-	public void setLocation(String name, GimLocation location)
+	public CompletableFuture<Void> setLocation(String name, GimLocation location)
 	{
-		GimPlayer gimp = getGimp(name);
-		if (gimp == null)
-		{
-			return;
-		}
-		// Create new GimLocation from raw data
-		GimLocation newGimLocation = new GimLocation(location.getX(), location.getY(), location.getPlane());
-		// Set GimPlayer location to new location
-		gimp.setLocation(newGimLocation);
+		return submit(() -> {
+			GimPlayer gimp = getGimp(name);
+			if (gimp == null)
+			{
+				return;
+			}
+			// GimLocation is immutable, so it's kept as is
+			gimp.setLocation(location);
+			gimp.markDirty(GimField.LOCATION);
+		});
 	}
 
 	/**
@@ -290,33 +703,141 @@ public class Group
 	 *
 	 * @param name  GimPlayer name
 	 * @param world world number
+	 * @return future completed once the change is applied
 	 */
-	public void setWorld(String name, int world)
+	public CompletableFuture<Void> setWorld(String name, int world)
 	{
-		GimPlayer gimp = getGimp(name);
-		if (gimp == null)
-		{
-			return;
-		}
-		gimp.setWorld(world);
+		return submit(() -> {
+			GimPlayer gimp = getGimp(name);
+			if (gimp == null)
+			{
+				return;
+			}
+			gimp.setWorld(world);
+		});
 	}
 
 	/**
 	 * Sets the ghost mode value of the GimPlayer by name. If the GimPlayer
 	 * has a location stored, either removes the corresponding map point or
-	 * creates one, depending on the new ghost mode setting.
+	 * creates one, depending on the new ghost mode setting. Marks it for
+	 * the next broadcast.
 	 *
 	 * @param name      GimPlayer name
 	 * @param ghostMode ghost mode setting
+	 * @return future completed once the change is applied
 	 */
-	public void setGhostMode(String name, boolean ghostMode)
+	public CompletableFuture<Void> setGhostMode(String name, boolean ghostMode)
 	{
-		GimPlayer gimp = getGimp(name);
-		if (gimp == null)
-		{
-			return;
-		}
-		gimp.setGhostMode(ghostMode);
+		return submit(() -> {
+			GimPlayer gimp = getGimp(name);
+			if (gimp == null)
+			{
+				return;
+			}
+			gimp.setGhostMode(ghostMode);
+			gimp.markDirty(GimField.GHOST_MODE);
+		});
+	}
+
+	/**
+	 * Sets the HP value of the GimPlayer by name, marking it for the
+	 * next broadcast.
+	 *
+	 * @param name GimPlayer name
+	 * @param hp HP value
+	 * @return future completed once the change is applied
+	 */
+	public CompletableFuture<Void> setHp(String name, int hp)
+	{
+		return submit(() -> {
+			GimPlayer gimp = getGimp(name);
+			if (gimp != null)
+			{
+				gimp.setHp(hp);
+				gimp.markDirty(GimField.HP);
+			}
+		});
+	}
+
+	/**
+	 * Sets the max HP value of the GimPlayer by name, marking it for the
+	 * next broadcast.
+	 *
+	 * @param name  GimPlayer name
+	 * @param maxHp max HP value
+	 * @return future completed once the change is applied
+	 */
+	public CompletableFuture<Void> setMaxHp(String name, int maxHp)
+	{
+		return submit(() -> {
+			GimPlayer gimp = getGimp(name);
+			if (gimp != null)
+			{
+				gimp.setMaxHp(maxHp);
+				gimp.markDirty(GimField.MAX_HP);
+			}
+		});
+	}
+
+	/**
+	 * Sets the prayer value of the GimPlayer by name, marking it for the
+	 * next broadcast.
+	 *
+	 * @param name   GimPlayer name
+	 * @param prayer prayer value
+	 * @return future completed once the change is applied
+	 */
+	public CompletableFuture<Void> setPrayer(String name, int prayer)
+	{
+		return submit(() -> {
+			GimPlayer gimp = getGimp(name);
+			if (gimp != null)
+			{
+				gimp.setPrayer(prayer);
+				gimp.markDirty(GimField.PRAYER);
+			}
+		});
+	}
+
+	/**
+	 * Sets the max prayer value of the GimPlayer by name, marking it for
+	 * the next broadcast.
+	 *
+	 * @param name      GimPlayer name
+	 * @param maxPrayer max prayer value
+	 * @return future completed once the change is applied
+	 */
+	public CompletableFuture<Void> setMaxPrayer(String name, int maxPrayer)
+	{
+		return submit(() -> {
+			GimPlayer gimp = getGimp(name);
+			if (gimp != null)
+			{
+				gimp.setMaxPrayer(maxPrayer);
+				gimp.markDirty(GimField.MAX_PRAYER);
+			}
+		});
+	}
+
+	/**
+	 * Sets the last activity of the GimPlayer by name, marking it for the
+	 * next broadcast.
+	 *
+	 * @param name     GimPlayer name
+	 * @param activity last activity
+	 * @return future completed once the change is applied
+	 */
+	public CompletableFuture<Void> setLastActivity(String name, String activity)
+	{
+		return submit(() -> {
+			GimPlayer gimp = getGimp(name);
+			if (gimp != null)
+			{
+				gimp.setLastActivity(activity);
+				gimp.markDirty(GimField.LAST_ACTIVITY);
+			}
+		});
 	}
 
 	/**
@@ -342,9 +863,19 @@ public class Group
 
 	public CompletableFuture<HiscoreResult> setHiscores(String name)
 	{
-		GimPlayer gimp = getGimp(name);
+		if (getGimp(name) == null)
+		{
+			return CompletableFuture.completedFuture(null);
+		}
 		return getHiscores(name).whenCompleteAsync((result, ext) -> {
-			gimp.setHiscores(result);
+			write(() -> {
+				// The gimp may have left the group during the lookup
+				GimPlayer gimp = getGimp(name);
+				if (gimp != null)
+				{
+					gimp.setHiscores(result);
+				}
+			});
 		});
 	}
 
@@ -380,6 +911,13 @@ public class Group
 		return gimps.isEmpty();
 	}
 
+	/**
+	 * Replaces the no-break spaces in clan member names with spaces. Names
+	 * without any are returned as is, without copying.
+	 *
+	 * @param lookup name to sanitize
+	 * @return sanitized name
+	 */
 	private static String sanitize(String lookup)
 	{
 		return lookup.replace('\u00A0', ' ');
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.gimps;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Delivers changes to the Group to subscribers of their type, so each
+ * reader only hears about the fields it shows. Changes are posted on the
+ * Group's writer thread, so subscribers must hand any slow or UI work off
+ * to their own thread.
+ */
+@Slf4j
+public class GroupEvents
+{
+	private final Map<GimChange.Type, List<Consumer<GimChange>>> subscribers = new EnumMap<>(GimChange.Type.class);
+
+	public GroupEvents()
+	{
+		for (GimChange.Type type : GimChange.Type.values())
+		{
+			subscribers.put(type, new CopyOnWriteArrayList<>());
+		}
+	}
+
+	/**
+	 * Subscribes to changes of the given types.
+	 *
+	 * @param subscriber called with each change
+	 * @param types      types of change to subscribe to
+	 */
+	public void subscribe(Consumer<GimChange> subscriber, GimChange.Type... types)
+	{
+		for (GimChange.Type type : types)
+		{
+			subscribers.get(type).add(subscriber);
+		}
+	}
+
+	/**
+	 * Removes a subscriber from every type of change.
+	 *
+	 * @param subscriber subscriber to remove
+	 */
+	public void unsubscribe(Consumer<GimChange> subscriber)
+	{
+		for (List<Consumer<GimChange>> typeSubscribers : subscribers.values())
+		{
+			typeSubscribers.remove(subscriber);
+		}
+	}
+
+	/**
+	 * Posts a change to the subscribers of its type. A failing subscriber
+	 * doesn't keep the others from hearing about it.
+	 *
+	 * @param change change to post
+	 */
+	void post(GimChange change)
+	{
+		for (Consumer<GimChange> subscriber : subscribers.get(change.getType()))
+		{
+			try
+			{
+				subscriber.accept(change);
+			}
+			catch (RuntimeException e)
+			{
+				log.warn("Group change subscriber failed: " + e);
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.gimps;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * Immutable, versioned state of the Group, published by its writer thread
+ * after each change. Readers take one snapshot per frame or tick, and can
+ * skip their work when its version is the same as the last one they saw.
+ */
+public class GroupSnapshot
+{
+	static final GroupSnapshot EMPTY = new GroupSnapshot(0, Collections.emptyList());
+
+	/* Incremented each time the Group's data changes. */
+	@Getter
+	private final long version;
+
+	/* Gimps in clan member order. */
+	@Getter
+	private final List<GimPlayerSnapshot> gimps;
+
+	private final Map<String, GimPlayerSnapshot> gimpsByName = new HashMap<>();
+
+	GroupSnapshot(long version, List<GimPlayerSnapshot> gimps)
+	{
+		this.version = version;
+		this.gimps = Collections.unmodifiableList(gimps);
+		for (GimPlayerSnapshot gimp : gimps)
+		{
+			gimpsByName.put(gimp.getName(), gimp);
+		}
+	}
+
+	public GimPlayerSnapshot getGimp(String name)
+	{
+		return gimpsByName.get(name);
+	}
+
+	public boolean isEmpty()
+	{
+		return gimps.isEmpty();
+	}
+}
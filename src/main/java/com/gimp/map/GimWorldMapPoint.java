@@ -26,6 +26,7 @@ package com.gimp.map;
 
 import com.gimp.gimps.GimLocation;
 import com.gimp.gimps.GimPlayer;
+import com.gimp.gimps.GimPlayerSnapshot;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.util.LinkedList;
@@ -113,10 +114,26 @@ public class GimWorldMapPoint
 		}
 	}
 
-	public boolean moveTowardPlayer(boolean frameToggle)
+	/**
+	 * Checks whether the map point has caught up to the player's location.
+	 *
+	 * @param state latest snapshot of the player
+	 * @return whether the shown location is the player's location
+	 */
+	public boolean isAtPlayer(GimPlayerSnapshot state)
 	{
 		final WorldPoint shownLocation = getWorldPoint();
-		final GimLocation targetLocation = gimp.getLocation();
+		final GimLocation targetLocation = state.getLocation();
+		return shownLocation == null || targetLocation == null
+			|| (shownLocation.getX() == targetLocation.getX()
+			&& shownLocation.getY() == targetLocation.getY()
+			&& shownLocation.getPlane() == targetLocation.getPlane());
+	}
+
+	public boolean moveTowardPlayer(boolean frameToggle, GimPlayerSnapshot state)
+	{
+		final WorldPoint shownLocation = getWorldPoint();
+		final GimLocation targetLocation = state.getLocation();
 		if (shownLocation != null && targetLocation != null)
 		{
 			int dx = targetLocation.getX() - shownLocation.getX();
@@ -131,7 +148,7 @@ public class GimWorldMapPoint
 			{
 				// Otherwise if it's moved at all, smoothly move it toward the target location.
 				// If moving fast (e.g. running), move every frame; otherwise, move every other frame.
-				if (frameToggle || gimp.getSpeed() > 2.25)
+				if (frameToggle || state.getSpeed() > 2.25)
 				{
 					// Only move by a max of 1 tile in a given axis (keeps it consistent/smooth)
 					move(Math.min(1, Math.max(dx, -1)), Math.min(1, Math.max(dy, -1)));
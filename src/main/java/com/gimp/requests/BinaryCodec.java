@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.gimp.gimps.GimField;
+import com.gimp.gimps.GimLocation;
+import com.gimp.gimps.GimUpdate;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import net.runelite.api.coords.WorldPoint;
+import net.runelite.client.plugins.party.messages.TilePing;
+
+/**
+ * Compact payload format. A payload is laid out as:
+ * <pre>
+ * version (byte) | presence mask (varint) | null mask (varint) | name (string) | fields...
+ * </pre>
+ * Fields follow in {@link GimField} order, and only those with their bit set
+ * in the presence mask are written. Numbers are unsigned varints, strings are
+ * a varint byte length followed by UTF-8 bytes, booleans are a single byte,
+ * and locations are packed into one varint (15 bits x, 15 bits y, 2 bits plane).
+ * Fields also set in the null mask are cleared, and have no value written.
+ * Payloads without cleared fields are written as version 1, which has no null
+ * mask, so decoders that predate it can still read them.
+ */
+public class BinaryCodec implements PayloadCodec
+{
+	public static final String NAME = "binary";
+
+	private static final int VERSION = 2;
+
+	/* Version without a null mask. */
+	private static final int VERSION_WITHOUT_NULLS = 1;
+
+	private static final int COORDINATE_BITS = 15;
+
+	private static final int COORDINATE_MASK = (1 << COORDINATE_BITS) - 1;
+
+	/* Copy of GimField.values(), which returns a new array on each call. */
+	private static final GimField[] FIELDS = GimField.values();
+
+	/* Reused by every encode, so only the returned payload is allocated. */
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+
+	@Override
+	public String getName()
+	{
+		return NAME;
+	}
+
+	@Override
+	public String getContentType()
+	{
+		return "application/octet-stream";
+	}
+
+	@Override
+	public boolean isBinary()
+	{
+		return true;
+	}
+
+	@Override
+	public synchronized byte[] encode(Map<String, Object> data)
+	{
+		int mask = 0;
+		int nullMask = 0;
+		for (GimField field : FIELDS)
+		{
+			if (data.get(field.getKey()) != null)
+			{
+				mask |= field.getBit();
+			}
+			else if (field.isClearable() && data.containsKey(field.getKey()))
+			{
+				mask |= field.getBit();
+				nullMask |= field.getBit();
+			}
+		}
+		ByteArrayOutputStream out = buffer;
+		out.reset();
+		if (nullMask == 0)
+		{
+			out.write(VERSION_WITHOUT_NULLS);
+			writeVarint(out, mask);
+		}
+		else
+		{
+			out.write(VERSION);
+			writeVarint(out, mask);
+			writeVarint(out, nullMask);
+		}
+		writeString(out, (String) data.get("name"));
+		for (GimField field : FIELDS)
+		{
+			if ((mask & field.getBit()) == 0 || (nullMask & field.getBit()) != 0)
+			{
+				continue;
+			}
+			Object value = data.get(field.getKey());
+			switch (field)
+			{
+				case CUSTOM_STATUS:
+				case LAST_ACTIVITY:
+					writeString(out, (String) value);
+					break;
+				case GHOST_MODE:
+					out.write((Boolean) value ? 1 : 0);
+					break;
+				case LOCATION:
+					writeVarint(out, packLocation((GimLocation) value));
+					break;
+				case TILE_PING:
+					WorldPoint point = ((TilePing) value).getPoint();
+					writeVarint(out, packLocation(point.getX(), point.getY(), point.getPlane()));
+					break;
+				default:
+					writeVarint(out, ((Number) value).longValue());
+			}
+		}
+		return out.toByteArray();
+	}
+
+	@Override
+	public void decode(byte[] payload, GimUpdate update)
+	{
+		Reader in = new Reader(payload);
+		int version = in.readByte();
+		if (version != VERSION && version != VERSION_WITHOUT_NULLS)
+		{
+			throw new IllegalArgumentException("Unsupported binary payload version: " + version);
+		}
+		int mask = (int) in.readVarint();
+		int nullMask = version == VERSION ? (int) in.readVarint() : 0;
+		update.setName(in.readString());
+		for (GimField field : FIELDS)
+		{
+			if ((mask & field.getBit()) == 0)
+			{
+				continue;
+			}
+			if ((nullMask & field.getBit()) != 0)
+			{
+				update.clear(field);
+				continue;
+			}
+			switch (field)
+			{
+				case SEQ:
+					update.setSeq(in.readVarint());
+					break;
+				case HP:
+					update.setHp((int) in.readVarint());
+					break;
+				case MAX_HP:
+					update.setMaxHp((int) in.readVarint());
+					break;
+				case PRAYER:
+					update.setPrayer((int) in.readVarint());
+					break;
+				case MAX_PRAYER:
+					update.setMaxPrayer((int) in.readVarint());
+					break;
+				case CUSTOM_STATUS:
+					update.setCustomStatus(in.readString());
+					break;
+				case GHOST_MODE:
+					update.setGhostMode(in.readByte() != 0);
+					break;
+				case LOCATION:
+					long location = in.readVarint();
+					update.setLocation(unpackX(location), unpackY(location), unpackPlane(location));
+					break;
+				case LAST_ACTIVITY:
+					update.setLastActivity(in.readString());
+					break;
+				case TILE_PING:
+					long tilePing = in.readVarint();
+					update.setTilePing(unpackX(tilePing), unpackY(tilePing), unpackPlane(tilePing));
+					break;
+				case TIMESTAMP:
+					update.setTimestamp(in.readVarint());
+					break;
+			}
+		}
+	}
+
+	private static long packLocation(GimLocation location)
+	{
+		return packLocation(location.getX(), location.getY(), location.getPlane());
+	}
+
+	private static long packLocation(int x, int y, int plane)
+	{
+		return (x & COORDINATE_MASK)
+			| (long) (y & COORDINATE_MASK) << COORDINATE_BITS
+			| (long) (plane & 3) << (COORDINATE_BITS * 2);
+	}
+
+	private static int unpackX(long packed)
+	{
+		return (int) (packed & COORDINATE_MASK);
+	}
+
+	private static int unpackY(long packed)
+	{
+		return (int) (packed >>> COORDINATE_BITS & COORDINATE_MASK);
+	}
+
+	private static int unpackPlane(long packed)
+	{
+		return (int) (packed >>> (COORDINATE_BITS * 2) & 3);
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String value)
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarint(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	private static class Reader
+	{
+		private final byte[] buffer;
+
+		private int position;
+
+		Reader(byte[] buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		int readByte()
+		{
+			if (position >= buffer.length)
+			{
+				throw new IllegalArgumentException("Truncated binary payload");
+			}
+			return buffer[position++] & 0xFF;
+		}
+
+		long readVarint()
+		{
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7)
+			{
+				int b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+				{
+					return value;
+				}
+			}
+			throw new IllegalArgumentException("Malformed varint in binary payload");
+		}
+
+		String readString()
+		{
+			int length = (int) readVarint();
+			if (length < 0 || position + length > buffer.length)
+			{
+				throw new IllegalArgumentException("Truncated binary payload");
+			}
+			String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return value;
+		}
+	}
+}
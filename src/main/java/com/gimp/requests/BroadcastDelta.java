@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tracks the gimp data last sent to the server so that broadcasts only
+ * carry the fields that have actually changed. Each outgoing delta is
+ * stamped with a per-sender sequence number so receivers can drop stale
+ * or duplicate frames.
+ */
+@Slf4j
+public class BroadcastDelta
+{
+	public static final String NAME = "name";
+
+	public static final String SEQUENCE = "seq";
+
+	/* Event fields are sent every time and never become part of the baseline. */
+	private static final String TILE_PING = "tilePing";
+
+	/* Field values the server has been sent, and has not rejected. */
+	private final Map<String, Object> baseline = new HashMap<>();
+
+	/*
+	 * Seeded from the wall clock so a restarted client's sequence numbers
+	 * continue past the ones receivers saw in its previous session.
+	 */
+	private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+
+	/**
+	 * Reduces the gimp data to the name and the fields that differ from
+	 * the baseline, then records those fields as sent.
+	 *
+	 * @param data gimp data
+	 * @return delta data, or null if nothing has changed
+	 */
+	public synchronized Map<String, Object> diff(Map<String, Object> data)
+	{
+		Map<String, Object> delta = new HashMap<>();
+		for (Map.Entry<String, Object> entry : data.entrySet())
+		{
+			String key = entry.getKey();
+			Object value = entry.getValue();
+			if (key.equals(NAME) || key.equals(TILE_PING))
+			{
+				delta.put(key, value);
+			}
+			else if (!baseline.containsKey(key) || !Objects.equals(baseline.get(key), value))
+			{
+				delta.put(key, value);
+				baseline.put(key, value);
+			}
+		}
+		// Name alone carries no change
+		if (delta.size() == 1 && delta.containsKey(NAME))
+		{
+			return null;
+		}
+		delta.put(SEQUENCE, sequence.incrementAndGet());
+		return delta;
+	}
+
+	/**
+	 * Removes the fields of a failed delta from the baseline, so they
+	 * aren't dropped as unchanged when the caller queues them again. Fields
+	 * that have since changed again are left alone, as a newer value is
+	 * already on its way.
+	 *
+	 * @param delta delta data that failed to send
+	 */
+	public synchronized void invalidate(Map<String, Object> delta)
+	{
+		for (Map.Entry<String, Object> entry : delta.entrySet())
+		{
+			String key = entry.getKey();
+			if (baseline.containsKey(key) && Objects.equals(baseline.get(key), entry.getValue()))
+			{
+				baseline.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Clears the baseline, e.g. when the server has lost our state, so the
+	 * next broadcast sends every field.
+	 */
+	public synchronized void reset()
+	{
+		log.debug("Resetting broadcast baseline");
+		baseline.clear();
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.gimp.gimps.GimField;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds state broadcasts that failed to send, persisted to a file so they
+ * survive restarts. Only the latest value of each field is kept, which
+ * bounds its size, and the outbox is drained with the next broadcast once
+ * the server is reachable.
+ * Positions and events go stale, so they're never kept. The outbox is
+ * shared by everyone in the group playing on the machine, so it also keeps
+ * the name of the gimp its fields belong to, and drops them when another
+ * gimp drains it.
+ */
+@Slf4j
+public class BroadcastOutbox
+{
+	/* Fields worth delivering late. */
+	private static final Set<GimField> DURABLE_FIELDS = EnumSet.of(
+		GimField.HP,
+		GimField.MAX_HP,
+		GimField.PRAYER,
+		GimField.MAX_PRAYER,
+		GimField.CUSTOM_STATUS,
+		GimField.GHOST_MODE,
+		GimField.LAST_ACTIVITY
+	);
+
+	private static final Type FIELDS_TYPE = new TypeToken<Map<String, Object>>()
+	{
+	}.getType();
+
+	private final File file;
+
+	private final Gson gson;
+
+	/* Latest undelivered value of each field. */
+	private final Map<String, Object> fields = new HashMap<>();
+
+	/* Name of the gimp the fields belong to. */
+	private String owner;
+
+	public BroadcastOutbox(File file, Gson gson)
+	{
+		this.file = file;
+		this.gson = gson;
+	}
+
+	/**
+	 * Loads the fields left over from a previous session.
+	 */
+	public synchronized void load()
+	{
+		if (!file.exists())
+		{
+			return;
+		}
+		try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+		{
+			Map<String, Object> saved = gson.fromJson(reader, FIELDS_TYPE);
+			if (saved == null)
+			{
+				return;
+			}
+			final Object savedOwner = saved.get(BroadcastDelta.NAME);
+			if (!(savedOwner instanceof String))
+			{
+				// Fields of an unknown gimp can't be delivered safely
+				log.debug("Dropping outbox without an owner");
+				return;
+			}
+			owner = (String) savedOwner;
+			for (Map.Entry<String, Object> entry : saved.entrySet())
+			{
+				GimField field = GimField.fromKey(entry.getKey());
+				if (field != null && DURABLE_FIELDS.contains(field) && entry.getValue() != null)
+				{
+					fields.put(entry.getKey(), toInteger(entry.getValue()));
+				}
+			}
+			log.debug("Loaded " + fields.size() + " undelivered fields from outbox");
+		}
+		catch (IOException | JsonParseException e)
+		{
+			log.warn("Failed to load outbox: " + e);
+		}
+	}
+
+	/**
+	 * Adds the durable fields of a failed broadcast, replacing older values,
+	 * and saves the outbox.
+	 *
+	 * @param data broadcast data that failed to send
+	 */
+	public synchronized void add(Map<String, Object> data)
+	{
+		boolean changed = false;
+		final Object name = data.get(BroadcastDelta.NAME);
+		if (!(name instanceof String))
+		{
+			return;
+		}
+		if (!name.equals(owner))
+		{
+			changed = !fields.isEmpty();
+			fields.clear();
+			owner = (String) name;
+		}
+		for (Map.Entry<String, Object> entry : data.entrySet())
+		{
+			GimField field = GimField.fromKey(entry.getKey());
+			if (field != null && DURABLE_FIELDS.contains(field) && entry.getValue() != null)
+			{
+				changed |= !Objects.equals(fields.put(entry.getKey(), entry.getValue()), entry.getValue());
+			}
+		}
+		if (changed)
+		{
+			save();
+		}
+	}
+
+	/**
+	 * Removes the fields delivered by a broadcast, and saves the outbox.
+	 * Broadcasts are sent one at a time, so a delivered value is never
+	 * older than the one in the outbox.
+	 *
+	 * @param data broadcast data that was delivered
+	 */
+	public synchronized void acknowledge(Map<String, Object> data)
+	{
+		if (fields.isEmpty() || !Objects.equals(data.get(BroadcastDelta.NAME), owner))
+		{
+			return;
+		}
+		boolean changed = false;
+		for (String key : data.keySet())
+		{
+			changed |= fields.remove(key) != null;
+		}
+		if (changed)
+		{
+			save();
+		}
+	}
+
+	/**
+	 * Gets the undelivered fields of a gimp. Fields of another gimp are
+	 * dropped, as they're stale by the time that gimp logs in again.
+	 *
+	 * @param name name of the gimp draining the outbox
+	 * @return copy of the undelivered fields, empty if they belong to another gimp
+	 */
+	public synchronized Map<String, Object> getFields(String name)
+	{
+		if (!name.equals(owner))
+		{
+			if (!fields.isEmpty())
+			{
+				log.debug("Dropping outbox of another gimp");
+				fields.clear();
+				save();
+			}
+			return new HashMap<>();
+		}
+		return new HashMap<>(fields);
+	}
+
+	public synchronized boolean isEmpty()
+	{
+		return fields.isEmpty();
+	}
+
+	/**
+	 * Writes the outbox to a temporary file and moves it into place, so a
+	 * crash mid-write can't corrupt it. An empty outbox deletes the file.
+	 */
+	private void save()
+	{
+		try
+		{
+			if (fields.isEmpty())
+			{
+				Files.deleteIfExists(file.toPath());
+				return;
+			}
+			File directory = file.getParentFile();
+			if (directory != null && !directory.exists() && !directory.mkdirs())
+			{
+				throw new IOException("Failed to create " + directory);
+			}
+			File temp = new File(file.getPath() + ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8))
+			{
+				Map<String, Object> saved = new HashMap<>(fields);
+				saved.put(BroadcastDelta.NAME, owner);
+				gson.toJson(saved, writer);
+			}
+			try
+			{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to save outbox: " + e);
+		}
+	}
+
+	/**
+	 * Converts whole numbers read back by Gson, which reads every number
+	 * as a Double, to Integers like the ones broadcast.
+	 *
+	 * @param value saved value
+	 * @return value with whole numbers as Integers
+	 */
+	private static Object toInteger(Object value)
+	{
+		if (value instanceof Double && (Double) value == Math.rint((Double) value))
+		{
+			return ((Double) value).intValue();
+		}
+		return value;
+	}
+}
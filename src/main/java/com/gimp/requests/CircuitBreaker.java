@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tracks consecutive failures of a connection to the server, spacing out
+ * retries with exponential backoff and jitter so clients don't retry in
+ * lockstep. After enough failures in a row the circuit opens, and retries
+ * wait out a cooldown before a single trial is let through.
+ */
+public class CircuitBreaker
+{
+	/* Duration in milliseconds of the first backoff, doubled with each failure. */
+	public static final long BASE_DELAY = 1_000;
+
+	public static final long MAX_DELAY = 60_000;
+
+	/* Number of failures in a row that opens the circuit. */
+	public static final int FAILURE_THRESHOLD = 6;
+
+	/* Duration in milliseconds the circuit stays open before a trial. */
+	public static final long OPEN_DURATION = 300_000;
+
+	private int failures;
+
+	/* Time until which requests are refused, 0 if the circuit is closed. */
+	private long openUntil;
+
+	/**
+	 * Checks if a request may be made. Once the cooldown of an open circuit
+	 * is over, only the first caller is let through until its result is
+	 * recorded.
+	 *
+	 * @return whether a request may be made
+	 */
+	public synchronized boolean allowRequest()
+	{
+		if (openUntil == 0)
+		{
+			return true;
+		}
+		final long now = System.currentTimeMillis();
+		if (now < openUntil)
+		{
+			return false;
+		}
+		// Half open: refuse others until the trial succeeds or fails
+		openUntil = now + OPEN_DURATION;
+		return true;
+	}
+
+	/**
+	 * Checks if the circuit is open, refusing requests.
+	 *
+	 * @return whether the circuit is open
+	 */
+	public synchronized boolean isOpen()
+	{
+		return openUntil != 0 && System.currentTimeMillis() < openUntil;
+	}
+
+	/**
+	 * Closes the circuit and resets the backoff.
+	 */
+	public synchronized void recordSuccess()
+	{
+		failures = 0;
+		openUntil = 0;
+	}
+
+	/**
+	 * Counts a failure, opening the circuit for a jittered cooldown once
+	 * the threshold is reached.
+	 */
+	public synchronized void recordFailure()
+	{
+		failures++;
+		if (failures >= FAILURE_THRESHOLD)
+		{
+			openUntil = System.currentTimeMillis() + jitter(OPEN_DURATION);
+		}
+	}
+
+	/**
+	 * Gets the delay before the next retry: the rest of the cooldown if the
+	 * circuit is open, otherwise an exponential backoff of the failures so
+	 * far.
+	 *
+	 * @return retry delay in milliseconds
+	 */
+	public synchronized long getRetryDelay()
+	{
+		if (openUntil != 0)
+		{
+			return Math.max(0, openUntil - System.currentTimeMillis());
+		}
+		final long backoff = BASE_DELAY << Math.min(failures, 16);
+		return jitter(Math.min(backoff, MAX_DELAY));
+	}
+
+	/**
+	 * Randomizes a delay to between half and all of it.
+	 *
+	 * @param delay delay in milliseconds
+	 * @return jittered delay in milliseconds
+	 */
+	private static long jitter(long delay)
+	{
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+}
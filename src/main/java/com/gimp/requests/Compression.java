@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of snapshot-sized payloads sent by the server over the
+ * realtime clients, e.g. ping acks holding every gimp's data. The server
+ * only compresses payloads above the threshold the client asks for, since
+ * the few bytes saved on a single broadcast don't pay for the deflate
+ * header and the work on both ends.
+ * <p>
+ * HTTP responses don't need this, since OkHttp already asks for gzip and
+ * decompresses responses transparently.
+ */
+public class Compression
+{
+	/* Name of the compression format, offered to the server. */
+	public static final String NAME = "deflate";
+
+	/* Size in bytes above which the server should compress payloads. */
+	public static final int THRESHOLD = 1024;
+
+	/**
+	 * Decompresses a payload compressed in the zlib format.
+	 *
+	 * @param payload compressed payload
+	 * @return decompressed payload
+	 * @throws IOException if the payload is malformed
+	 */
+	public static byte[] inflate(byte[] payload) throws IOException
+	{
+		Inflater inflater = new Inflater();
+		try
+		{
+			inflater.setInput(payload);
+			ByteArrayOutputStream output = new ByteArrayOutputStream(payload.length * 4);
+			byte[] buffer = new byte[4096];
+			while (!inflater.finished())
+			{
+				int length = inflater.inflate(buffer);
+				if (length == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				{
+					throw new IOException("Truncated compressed payload");
+				}
+				output.write(buffer, 0, length);
+			}
+			return output.toByteArray();
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException("Malformed compressed payload", e);
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+}
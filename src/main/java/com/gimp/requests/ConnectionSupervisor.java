@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Owns the connections to the server: keeps the socket connected, falls
+ * back on the event stream while it isn't, and picks the healthiest client
+ * for requests. Reconnects are spaced out by a circuit breaker per client,
+ * and listeners are registered again on each new connection. With more than
+ * one server configured, servers are probed periodically and the clients
+ * reconnect whenever a different server is selected. A socket that hasn't
+ * heard from the server within the silence timeout is treated as lost,
+ * since a half-open connection still reports being connected.
+ */
+@Slf4j
+public class ConnectionSupervisor
+{
+	private final RealtimeClient socketClient;
+
+	private final RealtimeClient streamClient;
+
+	/* Duration in milliseconds between server probes. */
+	public static final long PROBE_INTERVAL = 30_000;
+
+	/* Duration in milliseconds between liveness checks of the socket. */
+	public static final long LIVENESS_INTERVAL = 5_000;
+
+	private final HttpClient httpClient;
+
+	private final ServerSelector servers;
+
+	private final ScheduledExecutorService executor;
+
+	private final Map<RealtimeClient, Connection> connections = new HashMap<>();
+
+	private final CircuitBreaker httpBreaker = new CircuitBreaker();
+
+	/* Whether the last HTTP request succeeded, false until one has. */
+	private final AtomicBoolean httpHealthy = new AtomicBoolean();
+
+	private final List<Runnable> httpRecoveryListeners = new ArrayList<>();
+
+	private ScheduledFuture<?> probeTask;
+
+	private ScheduledFuture<?> livenessTask;
+
+	/* Sends a request over the socket to draw a response from the server. */
+	private volatile Runnable heartbeat;
+
+	private boolean started;
+
+	public ConnectionSupervisor(RealtimeClient socketClient, RealtimeClient streamClient, HttpClient httpClient, ServerSelector servers, ScheduledExecutorService executor)
+	{
+		this.socketClient = socketClient;
+		this.streamClient = streamClient;
+		this.httpClient = httpClient;
+		// HTTP requests go to the same server, so use the format it last agreed to
+		httpClient.setCodecSource(socketClient);
+		this.servers = servers;
+		this.executor = executor;
+		connections.put(socketClient, new Connection(socketClient));
+		connections.put(streamClient, new Connection(streamClient));
+		servers.onChange(() -> {
+			try
+			{
+				executor.execute(this::onServerChange);
+			}
+			catch (RejectedExecutionException e)
+			{
+				log.debug("Connection supervisor is shut down, ignoring server change");
+			}
+		});
+	}
+
+	/**
+	 * Connects the socket, and keeps it connected until stopped. Starts
+	 * probing servers if there's more than one. A socket whose circuit is
+	 * open waits out its cooldown first.
+	 */
+	public synchronized void start()
+	{
+		started = true;
+		final Connection socketConnection = connections.get(socketClient);
+		if (socketConnection.breaker.allowRequest())
+		{
+			socketConnection.connect();
+		}
+		else
+		{
+			socketConnection.scheduleConnect();
+		}
+		try
+		{
+			probeTask = executor.scheduleWithFixedDelay(() -> {
+				if (servers.hasAlternatives())
+				{
+					servers.probe();
+				}
+			}, 0, PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+			livenessTask = executor.scheduleWithFixedDelay(this::checkLiveness, LIVENESS_INTERVAL, LIVENESS_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			log.debug("Connection supervisor is shut down, not probing servers");
+		}
+	}
+
+	/**
+	 * Drops both connections, then connects the socket again, e.g. after a
+	 * different server is selected. Backoff and open circuits are kept, so
+	 * a network that blocks the socket everywhere doesn't retry it at full
+	 * speed on every failover.
+	 */
+	public synchronized void restart()
+	{
+		stop();
+		start();
+	}
+
+	/**
+	 * Disconnects both clients and cancels any pending reconnect.
+	 */
+	public synchronized void stop()
+	{
+		started = false;
+		if (probeTask != null)
+		{
+			probeTask.cancel(false);
+			probeTask = null;
+		}
+		if (livenessTask != null)
+		{
+			livenessTask.cancel(false);
+			livenessTask = null;
+		}
+		for (Connection connection : connections.values())
+		{
+			connection.close();
+		}
+	}
+
+	/**
+	 * Sets the heartbeat sent over the socket once it's been silent for half
+	 * the silence timeout. Its response counts as hearing from the server.
+	 *
+	 * @param heartbeat sends a request over the socket
+	 */
+	public void setHeartbeat(Runnable heartbeat)
+	{
+		this.heartbeat = heartbeat;
+	}
+
+	/**
+	 * Registers a listener for an event on a client, which is kept across
+	 * its reconnects.
+	 *
+	 * @param client   socket or event stream client
+	 * @param event    event name
+	 * @param listener event listener
+	 */
+	public synchronized void on(RealtimeClient client, String event, EventEmitter.Listener listener)
+	{
+		connections.get(client).listeners.computeIfAbsent(event, e -> new ArrayList<>()).add(listener);
+		client.on(event, listener);
+	}
+
+	/**
+	 * Removes all listeners for an event on a client.
+	 *
+	 * @param client socket or event stream client
+	 * @param event  event name
+	 */
+	public synchronized void off(RealtimeClient client, String event)
+	{
+		connections.get(client).listeners.remove(event);
+		client.off(event);
+	}
+
+	/**
+	 * Registers a listener for HTTP recovering: the first HTTP request that
+	 * succeeds, at all or after a failure. Called on the thread completing
+	 * the request.
+	 *
+	 * @param listener recovery listener
+	 */
+	public synchronized void onHttpRecovery(Runnable listener)
+	{
+		httpRecoveryListeners.add(listener);
+	}
+
+	/**
+	 * Gets the client to make requests with: the socket if it's connected,
+	 * then the event stream, then HTTP unless its circuit is open.
+	 *
+	 * @return request client, or null if the server is unreachable
+	 */
+	public RequestClient getRequestClient()
+	{
+		if (socketClient.isConnected() && socketClient.getSilence() < getSilenceTimeout())
+		{
+			return socketClient;
+		}
+		if (streamClient.isConnected())
+		{
+			return streamClient;
+		}
+		if (!httpBreaker.allowRequest())
+		{
+			return null;
+		}
+		return httpClient;
+	}
+
+	/**
+	 * Gets the HTTP client, e.g. to race the realtime client with it.
+	 *
+	 * @return HTTP client, or null if its circuit is open
+	 */
+	public RequestClient getHttpClient()
+	{
+		return httpBreaker.allowRequest() ? httpClient : null;
+	}
+
+	/**
+	 * Records the outcome of a request made over HTTP, so repeated failures
+	 * open its circuit. Canceled requests, e.g. the losing attempt of a
+	 * hedged ping, and requests rejected by the client's own in-flight
+	 * limit say nothing about the server and aren't recorded.
+	 *
+	 * @param requestClient client the request was made with
+	 * @param request       future of the request
+	 */
+	public void track(RequestClient requestClient, CompletableFuture<String> request)
+	{
+		if (requestClient != httpClient)
+		{
+			return;
+		}
+		request.whenComplete((result, ex) -> {
+			if (ex == null)
+			{
+				httpBreaker.recordSuccess();
+				if (httpHealthy.compareAndSet(false, true))
+				{
+					onHttpRecovery();
+				}
+				return;
+			}
+			final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+			if (cause instanceof CancellationException || cause instanceof RejectedExecutionException)
+			{
+				return;
+			}
+			httpBreaker.recordFailure();
+			servers.recordFailure();
+			httpHealthy.set(false);
+		});
+	}
+
+	private void onHttpRecovery()
+	{
+		final List<Runnable> listeners;
+		synchronized (this)
+		{
+			listeners = new ArrayList<>(httpRecoveryListeners);
+		}
+		for (Runnable listener : listeners)
+		{
+			listener.run();
+		}
+	}
+
+	private long getSilenceTimeout()
+	{
+		return socketClient.config.silenceTimeout() * 1000L;
+	}
+
+	/**
+	 * Checks the socket still hears from the server. Sends a heartbeat once
+	 * it's been silent for half the silence timeout, and drops the socket
+	 * once it's been silent for all of it, falling back on the event stream
+	 * while it reconnects.
+	 */
+	private void checkLiveness()
+	{
+		if (!socketClient.isConnected())
+		{
+			return;
+		}
+		final long silence = socketClient.getSilence();
+		final long silenceTimeout = getSilenceTimeout();
+		if (silence >= silenceTimeout)
+		{
+			synchronized (this)
+			{
+				if (!started)
+				{
+					return;
+				}
+				log.warn("Socket silent for " + silence + "ms, reconnecting");
+				Connection connection = connections.get(socketClient);
+				connection.close();
+				onDisconnect(connection, false);
+			}
+		}
+		else if (silence >= silenceTimeout / 2 && heartbeat != null)
+		{
+			heartbeat.run();
+		}
+	}
+
+	/**
+	 * Called when a client connects.
+	 *
+	 * @param connection connection that connected
+	 */
+	private synchronized void onConnect(Connection connection)
+	{
+		connection.breaker.recordSuccess();
+		if (connection.client == socketClient)
+		{
+			// The event stream is only a fallback, so close it once the socket is back
+			connections.get(streamClient).close();
+		}
+	}
+
+	/**
+	 * Called when a client disconnects or fails to connect. Schedules its
+	 * reconnect, and opens the event stream if the socket is down.
+	 *
+	 * @param connection connection that went down
+	 * @param failed     whether it failed to connect, rather than dropping
+	 */
+	private synchronized void onDisconnect(Connection connection, boolean failed)
+	{
+		if (!started)
+		{
+			return;
+		}
+		// Only HTTP failures count against the server, since a realtime client can
+		// fail to connect to every server alike, e.g. where sockets are blocked
+		if (failed)
+		{
+			connection.breaker.recordFailure();
+		}
+		if (connection.client == streamClient && socketClient.isConnected())
+		{
+			return;
+		}
+		connection.scheduleConnect();
+		if (connection.client == socketClient)
+		{
+			Connection streamConnection = connections.get(streamClient);
+			if (!streamClient.isConnected())
+			{
+				streamConnection.scheduleConnect();
+			}
+		}
+	}
+
+	/**
+	 * Called when a different server is selected, reconnecting to it.
+	 */
+	private synchronized void onServerChange()
+	{
+		if (started)
+		{
+			log.debug("Reconnecting to " + servers.getBaseUrl());
+			restart();
+		}
+	}
+
+	/**
+	 * The lifecycle of a client's connection.
+	 */
+	private class Connection
+	{
+		private final RealtimeClient client;
+
+		private final CircuitBreaker breaker = new CircuitBreaker();
+
+		/* Listeners registered again on each new connection. */
+		private final Map<String, List<EventEmitter.Listener>> listeners = new HashMap<>();
+
+		/* Incremented on each connect or close, so events of older connections are ignored. */
+		private int generation;
+
+		private ScheduledFuture<?> pendingConnect;
+
+		private boolean connecting;
+
+		Connection(RealtimeClient client)
+		{
+			this.client = client;
+		}
+
+		/**
+		 * Connects the client now, replacing any existing connection.
+		 */
+		void connect()
+		{
+			synchronized (ConnectionSupervisor.this)
+			{
+				if (!started)
+				{
+					return;
+				}
+				connecting = false;
+				final int connectGeneration = ++generation;
+				client.connect();
+				for (Map.Entry<String, List<EventEmitter.Listener>> entry : listeners.entrySet())
+				{
+					for (EventEmitter.Listener listener : entry.getValue())
+					{
+						client.on(entry.getKey(), listener);
+					}
+				}
+				client.on(RealtimeClient.EVENT_CONNECT, args -> {
+					if (isCurrent(connectGeneration))
+					{
+						onConnect(this);
+					}
+				});
+				client.on(RealtimeClient.EVENT_DISCONNECT, args -> {
+					if (isCurrent(connectGeneration))
+					{
+						onDisconnect(this, false);
+					}
+				});
+				client.on(RealtimeClient.EVENT_CONNECT_ERROR, args -> {
+					if (isCurrent(connectGeneration))
+					{
+						onDisconnect(this, true);
+					}
+				});
+			}
+		}
+
+		/**
+		 * Connects the client after its backoff, unless already scheduled
+		 * or the circuit is open. Open circuits are retried after their
+		 * cooldown.
+		 */
+		void scheduleConnect()
+		{
+			if (connecting)
+			{
+				return;
+			}
+			final long delay = breaker.getRetryDelay();
+			log.debug("Reconnecting " + client.getClass().getSimpleName() + " in " + delay + "ms"
+				+ (breaker.isOpen() ? " (circuit open)" : ""));
+			try
+			{
+				pendingConnect = executor.schedule(() -> {
+					if (breaker.allowRequest())
+					{
+						connect();
+					}
+					else
+					{
+						synchronized (ConnectionSupervisor.this)
+						{
+							connecting = false;
+							scheduleConnect();
+						}
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+				connecting = true;
+			}
+			catch (RejectedExecutionException e)
+			{
+				log.debug("Connection supervisor is shut down, not reconnecting");
+			}
+		}
+
+		/**
+		 * Disconnects the client and cancels any pending reconnect.
+		 */
+		void close()
+		{
+			generation++;
+			connecting = false;
+			if (pendingConnect != null)
+			{
+				pendingConnect.cancel(false);
+				pendingConnect = null;
+			}
+			client.disconnect();
+		}
+
+		private boolean isCurrent(int connectGeneration)
+		{
+			synchronized (ConnectionSupervisor.this)
+			{
+				return connectGeneration == generation;
+			}
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Calls the listeners registered for an event when it's emitted, on the
+ * emitting thread. Used by the realtime clients, so their listeners don't
+ * depend on the Socket.IO client library.
+ */
+public class EventEmitter
+{
+	/**
+	 * Listener of an event, called with the event's arguments.
+	 */
+	public interface Listener
+	{
+		void call(Object... args);
+	}
+
+	private final Map<String, List<Listener>> listeners = new ConcurrentHashMap<>();
+
+	/**
+	 * Registers a listener for an event.
+	 *
+	 * @param event    event name
+	 * @param listener event listener
+	 */
+	public void on(String event, Listener listener)
+	{
+		listeners.computeIfAbsent(event, e -> new CopyOnWriteArrayList<>()).add(listener);
+	}
+
+	/**
+	 * Removes all listeners for an event.
+	 *
+	 * @param event event name
+	 */
+	public void off(String event)
+	{
+		listeners.remove(event);
+	}
+
+	/**
+	 * Calls the listeners of an event with the given arguments.
+	 *
+	 * @param event event name
+	 * @param args  event arguments
+	 */
+	public void emit(String event, Object... args)
+	{
+		List<Listener> eventListeners = listeners.get(event);
+		if (eventListeners == null)
+		{
+			return;
+		}
+		for (Listener listener : eventListeners)
+		{
+			listener.call(args);
+		}
+	}
+}
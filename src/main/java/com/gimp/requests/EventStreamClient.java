@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.gimp.GimPluginConfig;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Realtime client receiving broadcasts as Server-Sent Events over a plain
+ * streaming HTTP response, for networks where WebSockets are blocked.
+ * Requests are still made over HTTP.
+ * <p>
+ * The stream is opened with a GET to /events/{namespace}, with the session
+ * to resume in the query. The server first sends a "hello" event with its
+ * options and whether it resumed the session, then a "broadcast" event with
+ * JSON data for each broadcast. Comment lines can be sent to keep proxies
+ * from closing an idle stream.
+ */
+@Slf4j
+public class EventStreamClient extends RealtimeClient
+{
+	private static final String EVENT_HELLO = "hello";
+
+	private static final String EVENT_MESSAGE = "message";
+
+	private final HttpClient httpClient;
+
+	private final OkHttpClient client;
+
+	private final PayloadCodec defaultCodec;
+
+	private final PayloadCodec[] offeredCodecs;
+
+	private Call streamCall;
+
+	/* Listeners of the current stream. */
+	private volatile EventEmitter emitter = new EventEmitter();
+
+	private volatile boolean connected;
+
+	public EventStreamClient(String namespace, GimPluginConfig config, HttpClient httpClient, PayloadCodec defaultCodec, PayloadCodec... offeredCodecs)
+	{
+		this.namespace = namespace;
+		this.config = config;
+		this.httpClient = httpClient;
+		this.defaultCodec = defaultCodec;
+		this.offeredCodecs = offeredCodecs;
+		codec = defaultCodec;
+		// The stream stays open indefinitely, so it can't have a read timeout
+		client = httpClient.getClient().newBuilder()
+			.readTimeout(0, TimeUnit.MILLISECONDS)
+			.build();
+	}
+
+	/**
+	 * Opens the event stream, closing any existing one. Listeners of the
+	 * previous stream are dropped.
+	 */
+	public synchronized void connect()
+	{
+		if (!validateUrl())
+		{
+			log.warn("Invalid event stream URL, aborting");
+			return;
+		}
+		if (streamCall != null)
+		{
+			streamCall.cancel();
+		}
+		emitter = new EventEmitter();
+		connected = false;
+		codec = defaultCodec;
+		StringBuilder codecNames = new StringBuilder();
+		for (PayloadCodec offeredCodec : offeredCodecs)
+		{
+			codecNames.append(codecNames.length() > 0 ? "," : "").append(offeredCodec.getName());
+		}
+		Request request = new Request.Builder()
+			.url(getBaseUrl() + "/events/" + namespace + "?codecs=" + codecNames + getSessionQuery())
+			.header("Accept", "text/event-stream")
+			.header("Cache-Control", "no-cache")
+			.build();
+		streamCall = client.newCall(request);
+		streamCall.enqueue(new StreamCallback(emitter));
+	}
+
+	/**
+	 * Closes the event stream.
+	 */
+	public synchronized void disconnect()
+	{
+		if (streamCall != null)
+		{
+			streamCall.cancel();
+		}
+	}
+
+	public boolean isConnected()
+	{
+		return connected;
+	}
+
+	public void on(String event, EventEmitter.Listener listener)
+	{
+		emitter.on(event, listener);
+	}
+
+	public void off(String event)
+	{
+		emitter.off(event);
+	}
+
+	/**
+	 * Pings the server over HTTP.
+	 *
+	 * @param since version cursor of the last ping data, or null for all data
+	 * @return future of response data in JSON
+	 */
+	public CompletableFuture<String> ping(Long since)
+	{
+		return httpClient.ping(since);
+	}
+
+	/**
+	 * Pings are sent by the HTTP client, so it knows when they were sent.
+	 *
+	 * @param request future returned for the request
+	 * @return local time in milliseconds, or -1 if the request was never sent
+	 */
+	@Override
+	public long getSentAt(CompletableFuture<String> request)
+	{
+		return httpClient.getSentAt(request);
+	}
+
+	/**
+	 * Broadcasts over HTTP, in the format the stream agreed on.
+	 *
+	 * @param data     request data
+	 * @param priority priority of the broadcast
+	 * @return future of response data in JSON
+	 */
+	public CompletableFuture<String> broadcast(Map<String, Object> data, Priority priority)
+	{
+		return httpClient.broadcast(data, priority, codec);
+	}
+
+	private class StreamCallback implements Callback
+	{
+		/* Listeners of the stream this callback belongs to. */
+		private final EventEmitter streamEmitter;
+
+		StreamCallback(EventEmitter streamEmitter)
+		{
+			this.streamEmitter = streamEmitter;
+		}
+
+		@Override
+		public void onFailure(@NonNull Call call, @NonNull IOException e)
+		{
+			log.warn("Failed to open event stream: " + e);
+			onDisconnect(EVENT_CONNECT_ERROR);
+		}
+
+		@Override
+		public void onResponse(@NonNull Call call, @NonNull Response response)
+		{
+			try (ResponseBody body = response.body())
+			{
+				if (!response.isSuccessful() || body == null)
+				{
+					log.warn("Event stream refused: " + response.code());
+					onDisconnect(EVENT_CONNECT_ERROR);
+					return;
+				}
+				// A stream replaced while it was opening must not mark the client connected
+				if (streamEmitter != emitter)
+				{
+					log.debug("Closing a replaced event stream that opened late");
+					return;
+				}
+				log.debug("Event stream connected");
+				connected = true;
+				streamEmitter.emit(EVENT_CONNECT);
+				read(body.source());
+				log.debug("Event stream closed");
+			}
+			catch (IOException e)
+			{
+				log.debug("Event stream interrupted: " + e);
+			}
+			onDisconnect(EVENT_DISCONNECT);
+		}
+
+		/**
+		 * Reads events until the stream ends. Each event is a block of
+		 * "field: value" lines ended by a blank line; multiple data lines
+		 * are joined with newlines.
+		 *
+		 * @param source response body source
+		 * @throws IOException if the stream is interrupted
+		 */
+		private void read(BufferedSource source) throws IOException
+		{
+			String event = EVENT_MESSAGE;
+			StringBuilder data = new StringBuilder();
+			String line;
+			while ((line = source.readUtf8Line()) != null)
+			{
+				if (line.isEmpty())
+				{
+					if (data.length() > 0)
+					{
+						dispatch(event, data.toString());
+					}
+					event = EVENT_MESSAGE;
+					data.setLength(0);
+				}
+				else if (line.startsWith("event:"))
+				{
+					event = line.substring(6).trim();
+				}
+				else if (line.startsWith("data:"))
+				{
+					if (data.length() > 0)
+					{
+						data.append('\n');
+					}
+					data.append(line.substring(line.startsWith("data: ") ? 6 : 5));
+				}
+				// Comments (":") and other fields are ignored
+			}
+		}
+
+		private void dispatch(String event, String dataJson)
+		{
+			try
+			{
+				if (EVENT_BROADCAST.equals(event))
+				{
+					streamEmitter.emit(EVENT_BROADCAST, new JSONObject(dataJson));
+				}
+				else if (EVENT_HELLO.equals(event))
+				{
+					onHello(new JSONObject(dataJson));
+				}
+			}
+			catch (JSONException e)
+			{
+				log.warn("Malformed event data: " + e);
+			}
+		}
+
+		private void onDisconnect(String event)
+		{
+			// Only the current stream changes the connection state
+			if (streamEmitter == emitter)
+			{
+				connected = false;
+			}
+			streamEmitter.emit(event);
+		}
+
+		/**
+		 * Applies the payload format chosen by the server for requests. The
+		 * stream itself is always JSON text. Then emits the session event
+		 * with whether the server resumed the session. Hellos from replaced
+		 * streams are ignored.
+		 *
+		 * @param options server options
+		 */
+		private void onHello(JSONObject options)
+		{
+			if (streamEmitter != emitter)
+			{
+				return;
+			}
+			String codecName = options.optString("codec", defaultCodec.getName());
+			for (PayloadCodec offeredCodec : offeredCodecs)
+			{
+				if (offeredCodec.getName().equals(codecName))
+				{
+					log.debug("Negotiated payload codec: " + codecName);
+					codec = offeredCodec;
+					break;
+				}
+			}
+			streamEmitter.emit(EVENT_SESSION, options.optBoolean("resumed", false));
+		}
+	}
+}
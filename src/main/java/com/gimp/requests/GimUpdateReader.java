@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.gimp.gimps.GimField;
+import com.gimp.gimps.GimLocation;
+import com.gimp.gimps.GimUpdate;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.json.JSONObject;
+
+/**
+ * Decodes gimp data straight into a {@link GimUpdate}, without an
+ * intermediate string or reflective binding.
+ */
+public class GimUpdateReader
+{
+	private static final String NAME = "name";
+
+	private static final String POINT = "point";
+
+	private static final String VERSION = "version";
+
+	private static final String FULL = "full";
+
+	private static final String GIMPS = "gimps";
+
+	private static final String TIME = "time";
+
+	/**
+	 * Reads one gimp data object into the update. Null values clear their
+	 * field.
+	 *
+	 * @param reader JSON reader positioned at the object
+	 * @param update update to write the fields to
+	 * @throws IOException if the JSON is malformed or a value has the wrong type
+	 */
+	public static void read(JsonReader reader, GimUpdate update) throws IOException
+	{
+		// The reader throws unchecked exceptions for values of the wrong type
+		try
+		{
+			reader.beginObject();
+			while (reader.hasNext())
+			{
+				String key = reader.nextName();
+				GimField field = GimField.fromKey(key);
+				if (reader.peek() == JsonToken.NULL)
+				{
+					// Null clears the field
+					reader.skipValue();
+					if (field != null)
+					{
+						update.clear(field);
+					}
+					continue;
+				}
+				if (key.equals(NAME))
+				{
+					update.setName(reader.nextString());
+					continue;
+				}
+				if (field == null)
+				{
+					reader.skipValue();
+					continue;
+				}
+				switch (field)
+				{
+					case SEQ:
+						update.setSeq(reader.nextLong());
+						break;
+					case HP:
+						update.setHp(reader.nextInt());
+						break;
+					case MAX_HP:
+						update.setMaxHp(reader.nextInt());
+						break;
+					case PRAYER:
+						update.setPrayer(reader.nextInt());
+						break;
+					case MAX_PRAYER:
+						update.setMaxPrayer(reader.nextInt());
+						break;
+					case CUSTOM_STATUS:
+						update.setCustomStatus(reader.nextString());
+						break;
+					case GHOST_MODE:
+						update.setGhostMode(reader.nextBoolean());
+						break;
+					case LOCATION:
+						readLocation(reader, update, false);
+						break;
+					case LAST_ACTIVITY:
+						update.setLastActivity(reader.nextString());
+						break;
+					case TILE_PING:
+						// Tile pings hold their location in a "point" object
+						reader.beginObject();
+						while (reader.hasNext())
+						{
+							if (reader.nextName().equals(POINT) && reader.peek() == JsonToken.BEGIN_OBJECT)
+							{
+								readLocation(reader, update, true);
+							}
+							else
+							{
+								reader.skipValue();
+							}
+						}
+						reader.endObject();
+						break;
+					case TIMESTAMP:
+						update.setTimestamp(reader.nextLong());
+						break;
+					default:
+						reader.skipValue();
+				}
+			}
+			reader.endObject();
+		}
+		catch (IllegalStateException | NumberFormatException e)
+		{
+			throw new IOException("Malformed gimp data: " + e.getMessage(), e);
+		}
+	}
+
+	private static void readLocation(JsonReader reader, GimUpdate update, boolean tilePing) throws IOException
+	{
+		int x = 0;
+		int y = 0;
+		int plane = 0;
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			String coordinate = reader.nextName();
+			if (coordinate.equals(GimLocation.Coordinate.x.name()))
+			{
+				x = reader.nextInt();
+			}
+			else if (coordinate.equals(GimLocation.Coordinate.y.name()))
+			{
+				y = reader.nextInt();
+			}
+			else if (coordinate.equals(GimLocation.Coordinate.plane.name()))
+			{
+				plane = reader.nextInt();
+			}
+			else
+			{
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		if (tilePing)
+		{
+			update.setTilePing(x, y, plane);
+		}
+		else
+		{
+			update.setLocation(x, y, plane);
+		}
+	}
+
+	/**
+	 * Reads a gimp data object already parsed by the socket client into
+	 * the update. Values of the wrong type are skipped, and null values
+	 * clear their field.
+	 *
+	 * @param json   gimp data
+	 * @param update update to write the fields to
+	 */
+	public static void read(JSONObject json, GimUpdate update)
+	{
+		Iterator<?> keys = json.keys();
+		while (keys.hasNext())
+		{
+			String key = (String) keys.next();
+			Object value = json.opt(key);
+			GimField field = GimField.fromKey(key);
+			if (value == null || value == JSONObject.NULL)
+			{
+				if (field != null)
+				{
+					update.clear(field);
+				}
+				continue;
+			}
+			if (key.equals(NAME))
+			{
+				update.setName(value.toString());
+				continue;
+			}
+			if (field == null || !hasType(field, value))
+			{
+				continue;
+			}
+			switch (field)
+			{
+				case SEQ:
+					update.setSeq(((Number) value).longValue());
+					break;
+				case HP:
+					update.setHp(((Number) value).intValue());
+					break;
+				case MAX_HP:
+					update.setMaxHp(((Number) value).intValue());
+					break;
+				case PRAYER:
+					update.setPrayer(((Number) value).intValue());
+					break;
+				case MAX_PRAYER:
+					update.setMaxPrayer(((Number) value).intValue());
+					break;
+				case CUSTOM_STATUS:
+					update.setCustomStatus(value.toString());
+					break;
+				case GHOST_MODE:
+					update.setGhostMode((Boolean) value);
+					break;
+				case LOCATION:
+					JSONObject location = (JSONObject) value;
+					update.setLocation(
+						location.optInt(GimLocation.Coordinate.x.name()),
+						location.optInt(GimLocation.Coordinate.y.name()),
+						location.optInt(GimLocation.Coordinate.plane.name()));
+					break;
+				case LAST_ACTIVITY:
+					update.setLastActivity(value.toString());
+					break;
+				case TILE_PING:
+					JSONObject point = ((JSONObject) value).optJSONObject(POINT);
+					if (point != null)
+					{
+						update.setTilePing(
+							point.optInt(GimLocation.Coordinate.x.name()),
+							point.optInt(GimLocation.Coordinate.y.name()),
+							point.optInt(GimLocation.Coordinate.plane.name()));
+					}
+					break;
+				case TIMESTAMP:
+					update.setTimestamp(((Number) value).longValue());
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Checks that a parsed value has the type its field is read as.
+	 *
+	 * @param field gimp data field
+	 * @param value parsed value
+	 * @return whether the value can be read into the field
+	 */
+	private static boolean hasType(GimField field, Object value)
+	{
+		switch (field)
+		{
+			case CUSTOM_STATUS:
+			case LAST_ACTIVITY:
+				return true;
+			case GHOST_MODE:
+				return value instanceof Boolean;
+			case LOCATION:
+			case TILE_PING:
+				return value instanceof JSONObject;
+			default:
+				return value instanceof Number;
+		}
+	}
+
+	/**
+	 * Reads ping data. Servers that support incremental pings reply with
+	 * a version cursor and the gimp data that changed since the requested
+	 * cursor, or an empty body if nothing has changed. Keys may come in
+	 * any order, and the server's clock time may be included:
+	 * <pre>
+	 * {"version": 42, "full": false, "time": 1650000000000, "gimps": {"name": {...}}}
+	 * </pre>
+	 * Older servers reply with every gimp's data keyed by gimp name. A
+	 * reply is an envelope if it has a numeric version, so a gimp named
+	 * "gimps" in an older reply is still read as a gimp.
+	 *
+	 * @param dataJson      JSON string of ping data
+	 * @param requestedFull whether the ping asked for every gimp's data
+	 * @return ping data
+	 * @throws IOException if the JSON is malformed
+	 */
+	public static PingData readPing(String dataJson, boolean requestedFull) throws IOException
+	{
+		if (dataJson.isEmpty())
+		{
+			return PingData.NOT_MODIFIED;
+		}
+		Map<String, GimUpdate> updates = new HashMap<>();
+		Map<String, GimUpdate> legacyUpdates = new HashMap<>();
+		String gimpsJson = null;
+		Long version = null;
+		Long time = null;
+		boolean full = requestedFull;
+		try (JsonReader reader = new JsonReader(new StringReader(dataJson)))
+		{
+			reader.beginObject();
+			while (reader.hasNext())
+			{
+				String name = reader.nextName();
+				JsonToken token = reader.peek();
+				// Gimp data is always an object, so other values belong to the envelope
+				if (name.equals(VERSION) && token == JsonToken.NUMBER)
+				{
+					version = reader.nextLong();
+				}
+				else if (name.equals(FULL) && token == JsonToken.BOOLEAN)
+				{
+					full = reader.nextBoolean() || requestedFull;
+				}
+				else if (name.equals(TIME) && token == JsonToken.NUMBER)
+				{
+					time = reader.nextLong();
+				}
+				else if (name.equals(GIMPS) && token == JsonToken.BEGIN_OBJECT && version != null)
+				{
+					readGimps(reader, updates);
+				}
+				else if (name.equals(GIMPS) && token == JsonToken.BEGIN_OBJECT)
+				{
+					// Whether this is the envelope's gimps or a gimp's data depends on
+					// a version that may still follow, so it's read once that's known
+					gimpsJson = new JsonParser().parse(reader).toString();
+				}
+				else if (token == JsonToken.BEGIN_OBJECT)
+				{
+					readGimp(reader, name, legacyUpdates);
+				}
+				else
+				{
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			if (gimpsJson != null)
+			{
+				try (JsonReader gimpsReader = new JsonReader(new StringReader(gimpsJson)))
+				{
+					if (version != null)
+					{
+						readGimps(gimpsReader, updates);
+					}
+					else
+					{
+						readGimp(gimpsReader, GIMPS, legacyUpdates);
+					}
+				}
+			}
+		}
+		catch (IllegalStateException | NumberFormatException | JsonParseException e)
+		{
+			throw new IOException("Malformed ping data: " + e.getMessage(), e);
+		}
+		if (version == null)
+		{
+			// Older servers always reply with every gimp's data
+			return new PingData(null, true, time, legacyUpdates);
+		}
+		return new PingData(version, full, time, updates);
+	}
+
+	private static void readGimps(JsonReader reader, Map<String, GimUpdate> updates) throws IOException
+	{
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			String name = reader.nextName();
+			if (reader.peek() == JsonToken.BEGIN_OBJECT)
+			{
+				readGimp(reader, name, updates);
+			}
+			else
+			{
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	private static void readGimp(JsonReader reader, String name, Map<String, GimUpdate> updates) throws IOException
+	{
+		GimUpdate update = new GimUpdate();
+		read(reader, update);
+		if (update.getName() == null)
+		{
+			update.setName(name);
+		}
+		updates.put(name, update);
+	}
+}
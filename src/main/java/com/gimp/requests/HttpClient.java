@@ -26,11 +26,13 @@ package com.gimp.requests;
 
 import com.gimp.GimPluginConfig;
 import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import lombok.NonNull;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -51,20 +53,44 @@ public class HttpClient extends RequestClient
 
 	public static final int OK = 200;
 
+	public static final int NOT_MODIFIED = 304;
+
 	public static final String EMPTY_BODY = "";
 
-	public HttpClient(String namespace, GimPluginConfig config)
+	/* Client whose negotiated format broadcasts are sent in, or null to use the client's own codec. */
+	private volatile RequestClient codecSource;
+
+	public HttpClient(String namespace, GimPluginConfig config, PayloadCodec codec)
 	{
 		this.config = config;
 		this.namespace = namespace;
+		this.codec = codec;
+		// Requests are limited by the in-flight cap, so the dispatcher never needs to queue them
+		// behind each other, with room left for an event stream held open to the same server
+		Dispatcher dispatcher = new Dispatcher();
+		dispatcher.setMaxRequestsPerHost(MAX_IN_FLIGHT + 2);
 		client = new OkHttpClient.Builder()
+			.dispatcher(dispatcher)
 			.readTimeout(5000, TimeUnit.MILLISECONDS)
 			.build();
 	}
 
+	/**
+	 * Sends broadcasts in the format the given client last agreed on with
+	 * the server, since HTTP requests go to the same server.
+	 *
+	 * @param client client to take the codec from
+	 */
+	void setCodecSource(RequestClient client)
+	{
+		codecSource = client;
+	}
+
 	/**
 	 * Makes an HTTP request with the given method to the URI at the client's
 	 * base URL. Accepts on optional body argument for appropriate request methods.
+	 * The call is canceled if its future fails or is canceled first, e.g. when
+	 * it misses its deadline.
 	 *
 	 * @param method HTTP method
 	 * @param uri    URI path following base URL
@@ -78,29 +104,46 @@ public class HttpClient extends RequestClient
 			.url(getBaseUrl() + uri)
 			.method(method, body)
 			.build();
-		client.newCall(request).enqueue(new Callback()
+		Call httpCall = client.newCall(request);
+		result.whenComplete((data, ex) -> {
+			if (ex != null)
+			{
+				httpCall.cancel();
+			}
+		});
+		httpCall.enqueue(new Callback()
 		{
 			@Override
 			public void onFailure(@NonNull Call call, @NonNull IOException e)
 			{
 				log.error("Request failed: " + e);
+				result.completeExceptionally(e);
 			}
 
 			@Override
-			public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException
+			public void onResponse(@NonNull Call call, @NonNull Response response)
 			{
 				try (ResponseBody bodyJson = response.body())
 				{
+					if (response.code() == NOT_MODIFIED)
+					{
+						result.complete(EMPTY_BODY);
+						return;
+					}
 					if (!response.isSuccessful())
 					{
 						throw new IOException(response.code() + ": " + bodyJson);
 					}
 					if (bodyJson == null)
 					{
-						throw new RuntimeException("Response body is null: " + response);
+						throw new IOException("Response body is null: " + response);
 					}
 					result.complete(bodyJson.string());
 				}
+				catch (IOException e)
+				{
+					result.completeExceptionally(e);
+				}
 			}
 		});
 		return result;
@@ -108,25 +151,48 @@ public class HttpClient extends RequestClient
 
 	/**
 	 * Makes an HTTP GET request to the ping endpoint at the URL injected
-	 * from the plugin config. A future of the JSON response body is returned.
+	 * from the plugin config. A future of the JSON response body is returned,
+	 * which is empty if nothing has changed since the version cursor.
+	 * Identical pings in flight share one request. OkHttp asks for gzip
+	 * and decompresses the response transparently, so large snapshots are
+	 * compressed by servers that support it.
 	 *
+	 * @param since version cursor of the last ping data, or null for all data
 	 * @return future of response data in JSON
 	 */
-	public CompletableFuture<String> ping()
+	public CompletableFuture<String> ping(Long since)
 	{
-		return request("GET", "/ping/" + namespace, null);
+		String uri = "/ping/" + namespace + (since != null ? "?since=" + since : "");
+		return register(uri, () -> request("GET", uri, null));
 	}
 
 	/**
 	 * Makes an HTTP POST request to the broadcast endpoint at the
-	 * URL injected from the plugin config. The JSON data is sent
-	 * in the request body. Times out after 5 seconds.
+	 * URL injected from the plugin config. The data is sent in the
+	 * request body, encoded in the format of the codec source, if any,
+	 * or with the client's codec. Times out after 5 seconds.
+	 *
+	 * @param data     request data
+	 * @param priority priority of the broadcast
+	 */
+	public CompletableFuture<String> broadcast(Map<String, Object> data, Priority priority)
+	{
+		RequestClient source = codecSource;
+		return broadcast(data, priority, source != null ? source.codec : codec);
+	}
+
+	/**
+	 * Makes an HTTP POST request to the broadcast endpoint with the data
+	 * encoded with the given codec, so callers that agreed on a format
+	 * elsewhere don't have to change the client's own.
 	 *
-	 * @param dataJson request data in JSON
+	 * @param data     request data
+	 * @param priority priority of the broadcast
+	 * @param codec    codec to encode the data with
 	 */
-	public CompletableFuture<String> broadcast(String dataJson)
+	public CompletableFuture<String> broadcast(Map<String, Object> data, Priority priority, PayloadCodec codec)
 	{
-		RequestBody body = RequestBody.create(JSON, dataJson);
-		return request("POST", "/broadcast/" + namespace, body);
+		RequestBody body = RequestBody.create(MediaType.get(codec.getContentType()), codec.encode(data));
+		return register(null, priority, () -> request("POST", "/broadcast/" + namespace, body));
 	}
 }
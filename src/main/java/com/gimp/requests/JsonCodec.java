@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.gimp.gimps.GimField;
+import com.gimp.gimps.GimUpdate;
+import com.google.gson.Gson;
+import com.gimp.gimps.GimLocation;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Default payload format, understood by every server version.
+ */
+public class JsonCodec implements PayloadCodec
+{
+	public static final String NAME = "json";
+
+	private final Gson gson;
+
+	/* Reused by every encode, so only the returned payload is allocated. */
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
+
+	private final Writer bufferWriter = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+
+	public JsonCodec(Gson gson)
+	{
+		this.gson = gson;
+	}
+
+	@Override
+	public String getName()
+	{
+		return NAME;
+	}
+
+	@Override
+	public String getContentType()
+	{
+		return "application/json; charset=utf-8";
+	}
+
+	@Override
+	public boolean isBinary()
+	{
+		return false;
+	}
+
+	@Override
+	public synchronized byte[] encode(Map<String, Object> data)
+	{
+		try
+		{
+			// Drops anything left in the writer by a failed encode
+			bufferWriter.flush();
+			buffer.reset();
+			JsonWriter writer = new JsonWriter(bufferWriter);
+			writer.beginObject();
+			for (Map.Entry<String, Object> entry : data.entrySet())
+			{
+				if (entry.getValue() != null)
+				{
+					writer.name(entry.getKey());
+					writeValue(writer, entry.getValue());
+				}
+				// Cleared fields are sent as null, anything else null is left out as by Gson
+				else if (isClearable(entry.getKey()))
+				{
+					writer.name(entry.getKey());
+					writer.nullValue();
+				}
+			}
+			writer.endObject();
+			writer.flush();
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Unencodable broadcast data", e);
+		}
+		return buffer.toByteArray();
+	}
+
+	private static boolean isClearable(String key)
+	{
+		GimField field = GimField.fromKey(key);
+		return field != null && field.isClearable();
+	}
+
+	/**
+	 * Writes a broadcast value. The field types are written directly, and
+	 * anything else, like tile pings, falls back to Gson.
+	 *
+	 * @param writer JSON writer
+	 * @param value  non-null value
+	 */
+	private void writeValue(JsonWriter writer, Object value) throws IOException
+	{
+		if (value instanceof Number)
+		{
+			writer.value((Number) value);
+		}
+		else if (value instanceof String)
+		{
+			writer.value((String) value);
+		}
+		else if (value instanceof Boolean)
+		{
+			writer.value((Boolean) value);
+		}
+		else if (value instanceof GimLocation)
+		{
+			GimLocation location = (GimLocation) value;
+			writer.beginObject();
+			writer.name(GimLocation.Coordinate.x.name()).value(location.getX());
+			writer.name(GimLocation.Coordinate.y.name()).value(location.getY());
+			writer.name(GimLocation.Coordinate.plane.name()).value(location.getPlane());
+			writer.endObject();
+		}
+		else
+		{
+			gson.toJson(value, value.getClass(), writer);
+		}
+	}
+
+	@Override
+	public void decode(byte[] payload, GimUpdate update)
+	{
+		try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8)))
+		{
+			GimUpdateReader.read(reader, update);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Malformed JSON payload", e);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.gimp.gimps.GimUpdate;
+import java.util.Map;
+
+/**
+ * Wire format for broadcast payloads, shared by the socket and HTTP clients.
+ */
+public interface PayloadCodec
+{
+	/**
+	 * Gets the name the server uses to identify this format.
+	 *
+	 * @return codec name
+	 */
+	String getName();
+
+	/**
+	 * Gets the HTTP content type of payloads in this format.
+	 *
+	 * @return content type
+	 */
+	String getContentType();
+
+	/**
+	 * Whether payloads in this format are binary, rather than text.
+	 *
+	 * @return whether the format is binary
+	 */
+	boolean isBinary();
+
+	/**
+	 * Encodes gimp broadcast data.
+	 *
+	 * @param data gimp data
+	 * @return encoded payload
+	 */
+	byte[] encode(Map<String, Object> data);
+
+	/**
+	 * Decodes a broadcast payload into an update.
+	 *
+	 * @param payload encoded payload
+	 * @param update  update to write the fields to
+	 */
+	void decode(byte[] payload, GimUpdate update);
+}
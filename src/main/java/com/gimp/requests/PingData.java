@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.gimp.gimps.GimUpdate;
+import java.util.Collections;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * Result of a ping: gimp data keyed by gimp name, and the server's version
+ * cursor for the data, if the server supports incremental pings.
+ */
+public class PingData
+{
+	/* Returned for a not-modified reply. */
+	public static final PingData NOT_MODIFIED = new PingData(null, false, null, Collections.emptyMap());
+
+	/* Server version of the data, or null if the server doesn't track versions. */
+	@Getter
+	private final Long version;
+
+	/* Whether the data holds every gimp, rather than only changes since a cursor. */
+	@Getter
+	private final boolean full;
+
+	/* Server clock time of the reply, or null if the server doesn't send it. */
+	@Getter
+	private final Long time;
+
+	@Getter
+	private final Map<String, GimUpdate> gimps;
+
+	public PingData(Long version, boolean full, Long time, Map<String, GimUpdate> gimps)
+	{
+		this.version = version;
+		this.full = full;
+		this.time = time;
+		this.gimps = gimps;
+	}
+}
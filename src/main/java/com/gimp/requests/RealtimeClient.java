@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import java.util.UUID;
+
+/**
+ * A client with a persistent connection to the server, which receives
+ * broadcasts as they're pushed rather than polling for them.
+ */
+public abstract class RealtimeClient extends RequestClient
+{
+	public static final String EVENT_CONNECT = "connect";
+
+	public static final String EVENT_DISCONNECT = "disconnect";
+
+	public static final String EVENT_CONNECT_ERROR = "connect_error";
+
+	public static final String EVENT_BROADCAST = "broadcast";
+
+	/* Emitted once the server has answered the handshake, with whether the session was resumed. */
+	public static final String EVENT_SESSION = "session";
+
+	/* Identifies this client to the server across reconnects. */
+	protected final String sessionId = UUID.randomUUID().toString();
+
+	/* Version of the latest data applied, sent on reconnect so the server only replays what was missed. */
+	public volatile Long resumeCursor;
+
+	/* Time the server was last heard from. */
+	private volatile long lastActivity;
+
+	/**
+	 * Builds the query parameters that ask the server to resume the session.
+	 *
+	 * @return query parameters, starting with "&amp;"
+	 */
+	protected String getSessionQuery()
+	{
+		return "&session=" + sessionId + (resumeCursor != null ? "&since=" + resumeCursor : "");
+	}
+
+	/**
+	 * Records that the server was heard from, e.g. on connecting or on
+	 * receiving any message. Transport-level keepalives don't count, since
+	 * they can outlive the server's handling of the connection.
+	 */
+	protected void recordActivity()
+	{
+		lastActivity = System.currentTimeMillis();
+	}
+
+	/**
+	 * Gets the time since the server was last heard from.
+	 *
+	 * @return silence duration in milliseconds
+	 */
+	public long getSilence()
+	{
+		return System.currentTimeMillis() - lastActivity;
+	}
+
+	/**
+	 * Connects to the server at the base URL and joins the group's room,
+	 * replacing any existing connection. Listeners must be registered again
+	 * after connecting.
+	 */
+	abstract public void connect();
+
+	/**
+	 * Disconnects from the server.
+	 */
+	abstract public void disconnect();
+
+	/**
+	 * Checks if the client is connected to the server.
+	 *
+	 * @return whether the client is connected
+	 */
+	abstract public boolean isConnected();
+
+	/**
+	 * Registers a listener for an event on the current connection. Broadcast
+	 * listeners receive a JSONObject, or a byte[] if a binary format was
+	 * negotiated.
+	 *
+	 * @param event    event name
+	 * @param listener event listener
+	 */
+	abstract public void on(String event, EventEmitter.Listener listener);
+
+	/**
+	 * Removes all listeners for an event on the current connection.
+	 *
+	 * @param event event name
+	 */
+	abstract public void off(String event);
+}
@@ -26,33 +26,73 @@ package com.gimp.requests;
 
 import com.gimp.GimPluginConfig;
 import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public abstract class RequestClient
 {
+	/* Duration in milliseconds after which an unanswered request fails. */
+	public static final long REQUEST_DEADLINE = 10_000;
+
+	/* Number of requests a client may have in flight before new ones are rejected. */
+	public static final int MAX_IN_FLIGHT = 8;
+
+	/* Number of in-flight slots only high priority requests may use. */
+	public static final int HIGH_PRIORITY_RESERVE = 2;
+
+	private static final ScheduledExecutorService deadlineExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "gimp-request-deadlines");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final AtomicInteger timedOut = new AtomicInteger();
+
+	/* Identical requests in flight, by key, shared by all of their callers. */
+	private final Map<String, SharedRequest> sharedRequests = new HashMap<>();
+
+	/* Local time each request was sent, by the future returned to its caller. */
+	private final Map<CompletableFuture<String>, Long> sentTimes = Collections.synchronizedMap(new WeakHashMap<>());
+
 	public GimPluginConfig config;
 
 	/* Used to join a server-side socket room and/or namespace HTTP requests. */
 	public String namespace;
 
+	/* Wire format of broadcast payloads, replaced when a connection negotiates another. */
+	public volatile PayloadCodec codec;
+
+	/* Picks among the configured servers, or null to use the config address as is. */
+	public ServerSelector servers;
+
 	/**
-	 * Gets the base URL from the address injected from the plugin config.
+	 * Gets the base URL of the selected server, or of the address injected
+	 * from the plugin config if there's no server selector.
 	 *
 	 * @return server base URL
 	 */
 	public String getBaseUrl()
 	{
-		String configServerAddress = config.serverAddress();
-		// Remove trailing slash(es) if exists
-		String trailingSlashes = "/+$";
-		configServerAddress = configServerAddress.replaceAll(trailingSlashes, "");
-		if (!configServerAddress.contains("http"))
+		if (servers != null)
 		{
-			return "http://" + configServerAddress;
+			return servers.getBaseUrl();
 		}
-		return configServerAddress;
+		return ServerSelector.toBaseUrl(config.serverAddress());
 	}
 
 	/**
@@ -80,17 +120,258 @@ public abstract class RequestClient
 	}
 
 	/**
-	 * Sends a /ping request or emits "ping" to the server.
+	 * Gets the number of requests currently in flight.
+	 *
+	 * @return in-flight request count
+	 */
+	public int getInFlightCount()
+	{
+		return inFlight.get();
+	}
+
+	/**
+	 * Gets the number of requests that have missed their deadline.
+	 *
+	 * @return timed out request count
+	 */
+	public int getTimedOutCount()
+	{
+		return timedOut.get();
+	}
+
+	/**
+	 * Gets the local time a request was sent. Callers sharing a request in
+	 * flight get the time it was first sent, not the time they joined it,
+	 * so round trip times measured from it are never too short.
+	 *
+	 * @param request future returned for the request
+	 * @return local time in milliseconds, or -1 if the request was never sent
+	 */
+	public long getSentAt(CompletableFuture<String> request)
+	{
+		final Long sentAt = sentTimes.get(request);
+		return sentAt != null ? sentAt : -1;
+	}
+
+	/**
+	 * Registers a low priority request, failing it with a TimeoutException if
+	 * it's still in flight after the deadline. Requests beyond the in-flight
+	 * limit fail right away with a RejectedExecutionException. Requests with a key share
+	 * one request with any identical request already in flight, which is only
+	 * canceled once all of its callers have canceled.
+	 * <p>
+	 * Subclasses should abort the underlying call when its future completes
+	 * exceptionally, e.g. on timeout or cancellation.
 	 *
+	 * @param key     key of identical requests, or null to never share
+	 * @param request starts the request and returns its future
 	 * @return future of response data in JSON
 	 */
-	abstract public CompletableFuture<String> ping();
+	protected CompletableFuture<String> register(String key, Supplier<CompletableFuture<String>> request)
+	{
+		return register(key, REQUEST_DEADLINE, Priority.LOW, request);
+	}
 
 	/**
-	 * Send a /broadcast request or emits "broadcast" to the server.
+	 * Registers a request with the given priority. Low priority requests
+	 * can't use the in-flight slots reserved for high priority ones.
 	 *
-	 * @param dataJson request data in JSON
+	 * @param key      key of identical requests, or null to never share
+	 * @param priority priority of the request
+	 * @param request  starts the request and returns its future
 	 * @return future of response data in JSON
+	 * @see #register(String, Supplier)
 	 */
-	abstract public CompletableFuture<String> broadcast(String dataJson);
+	protected CompletableFuture<String> register(String key, Priority priority, Supplier<CompletableFuture<String>> request)
+	{
+		return register(key, REQUEST_DEADLINE, priority, request);
+	}
+
+	private CompletableFuture<String> register(String key, long deadline, Priority priority, Supplier<CompletableFuture<String>> request)
+	{
+		// Looked up and joined in one critical section, so the request can't be abandoned in between
+		synchronized (sharedRequests)
+		{
+			SharedRequest sharedRequest = key != null ? sharedRequests.get(key) : null;
+			CompletableFuture<String> callerFuture = sharedRequest != null ? sharedRequest.join() : null;
+			if (callerFuture != null)
+			{
+				log.debug("Sharing in-flight request: " + key);
+			}
+			else
+			{
+				CompletableFuture<String> future = start(deadline, priority, request);
+				if (key == null || future.isDone())
+				{
+					return future;
+				}
+				sharedRequest = new SharedRequest(future, getSentAt(future));
+				sharedRequests.put(key, sharedRequest);
+				final SharedRequest registered = sharedRequest;
+				future.whenComplete((result, ex) -> {
+					synchronized (sharedRequests)
+					{
+						sharedRequests.remove(key, registered);
+					}
+				});
+				callerFuture = sharedRequest.join();
+			}
+			sentTimes.put(callerFuture, sharedRequest.sentAt);
+			return callerFuture;
+		}
+	}
+
+	/**
+	 * Fails a future that isn't complete by the deadline, without counting
+	 * it as a timed out request.
+	 *
+	 * @param future   future to expire
+	 * @param deadline duration in milliseconds after which the future fails
+	 * @return the given future
+	 */
+	protected static <T> CompletableFuture<T> expire(CompletableFuture<T> future, long deadline)
+	{
+		final ScheduledFuture<?> deadlineTask = deadlineExecutor.schedule(
+			() -> future.completeExceptionally(new TimeoutException("Deadline exceeded")), deadline, TimeUnit.MILLISECONDS);
+		future.whenComplete((result, ex) -> deadlineTask.cancel(false));
+		return future;
+	}
+
+	/**
+	 * Starts a request if there is room, and sets its deadline.
+	 *
+	 * @param deadline duration in milliseconds after which the request fails
+	 * @param priority priority of the request
+	 * @param request  starts the request and returns its future
+	 * @return future of response data in JSON
+	 */
+	private CompletableFuture<String> start(long deadline, Priority priority, Supplier<CompletableFuture<String>> request)
+	{
+		CompletableFuture<String> future;
+		final int limit = priority == Priority.HIGH ? MAX_IN_FLIGHT : MAX_IN_FLIGHT - HIGH_PRIORITY_RESERVE;
+		if (inFlight.incrementAndGet() > limit)
+		{
+			inFlight.decrementAndGet();
+			future = new CompletableFuture<>();
+			future.completeExceptionally(new RejectedExecutionException("Too many requests in flight"));
+			return future;
+		}
+		final long sentAt = System.currentTimeMillis();
+		try
+		{
+			future = request.get();
+		}
+		catch (RuntimeException e)
+		{
+			future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+		}
+		final CompletableFuture<String> tracked = future;
+		sentTimes.put(tracked, sentAt);
+		final ScheduledFuture<?> deadlineTask = deadlineExecutor.schedule(() -> {
+			if (tracked.completeExceptionally(new TimeoutException("Request deadline exceeded")))
+			{
+				timedOut.incrementAndGet();
+			}
+		}, deadline, TimeUnit.MILLISECONDS);
+		tracked.whenComplete((result, ex) -> {
+			deadlineTask.cancel(false);
+			inFlight.decrementAndGet();
+		});
+		return tracked;
+	}
+
+	/**
+	 * A request shared by the callers of identical requests. Each caller
+	 * gets its own future, so one caller canceling doesn't cancel the
+	 * others.
+	 */
+	private static class SharedRequest
+	{
+		private final CompletableFuture<String> future;
+
+		/* Local time the request was sent, before any caller joined it. */
+		private final long sentAt;
+
+		private int callers;
+
+		/* Whether all callers canceled, so the request is being canceled and can't be joined. */
+		private boolean abandoned;
+
+		SharedRequest(CompletableFuture<String> future, long sentAt)
+		{
+			this.future = future;
+			this.sentAt = sentAt;
+		}
+
+		/**
+		 * Joins the request as another caller, unless it has been abandoned
+		 * or has failed, e.g. by missing its deadline. Then the caller needs
+		 * a new request.
+		 *
+		 * @return future of the caller, or null if the request can't be joined
+		 */
+		synchronized CompletableFuture<String> join()
+		{
+			if (abandoned || future.isCompletedExceptionally())
+			{
+				return null;
+			}
+			callers++;
+			CompletableFuture<String> callerFuture = future.thenApply(result -> result);
+			callerFuture.whenComplete((result, ex) -> {
+				if (callerFuture.isCancelled())
+				{
+					leave();
+				}
+			});
+			return callerFuture;
+		}
+
+		private void leave()
+		{
+			synchronized (this)
+			{
+				callers--;
+				if (callers > 0)
+				{
+					return;
+				}
+				abandoned = true;
+			}
+			// Outside the lock, as canceling takes the shared requests lock to remove it
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * Sends a /ping request or emits "ping" to the server. With a version
+	 * cursor, servers that support it only reply with data changed since
+	 * then, or an empty reply if nothing has changed.
+	 *
+	 * @param since version cursor of the last ping data, or null for all data
+	 * @return future of response data in JSON
+	 */
+	abstract public CompletableFuture<String> ping(Long since);
+
+	/**
+	 * Send a /broadcast request or emits "broadcast" to the server. The
+	 * data is encoded with the client's codec.
+	 *
+	 * @param data     request data
+	 * @param priority priority of the broadcast
+	 * @return future of response data in JSON
+	 */
+	abstract public CompletableFuture<String> broadcast(Map<String, Object> data, Priority priority);
+
+	/**
+	 * Sends a low priority broadcast.
+	 *
+	 * @param data request data
+	 * @return future of response data in JSON
+	 */
+	public CompletableFuture<String> broadcast(Map<String, Object> data)
+	{
+		return broadcast(data, Priority.LOW);
+	}
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+/**
+ * Estimates the round trip time to the server and the offset of the
+ * server's clock from ours, from the server time in ping replies. Each
+ * sample assumes the server read its clock halfway through the round trip,
+ * so the sample with the shortest round trip of the recent ones is the
+ * most accurate and is the one used.
+ */
+public class ServerClock
+{
+	/* Number of recent samples to pick the best estimate from. */
+	private static final int SAMPLES = 8;
+
+	private final long[] offsets = new long[SAMPLES];
+
+	private final long[] rtts = new long[SAMPLES];
+
+	private int count;
+
+	private int next;
+
+	/* Offset and round trip time of the sample with the shortest round trip. */
+	private long offset;
+
+	private long rtt = -1;
+
+	/**
+	 * Adds a sample from a request sent and answered at the given local
+	 * times, with the server's time in the answer.
+	 *
+	 * @param sentAt     local time the request was sent
+	 * @param receivedAt local time the answer was received
+	 * @param serverTime server time in the answer
+	 */
+	public synchronized void addSample(long sentAt, long receivedAt, long serverTime)
+	{
+		final long sampleRtt = receivedAt - sentAt;
+		if (sampleRtt < 0)
+		{
+			return;
+		}
+		offsets[next] = serverTime - (sentAt + sampleRtt / 2);
+		rtts[next] = sampleRtt;
+		next = (next + 1) % SAMPLES;
+		count = Math.min(count + 1, SAMPLES);
+		int best = 0;
+		for (int i = 1; i < count; i++)
+		{
+			if (rtts[i] < rtts[best])
+			{
+				best = i;
+			}
+		}
+		offset = offsets[best];
+		rtt = rtts[best];
+	}
+
+	/**
+	 * Gets the estimated offset of the server clock from ours.
+	 *
+	 * @return offset in milliseconds, 0 until sampled
+	 */
+	public synchronized long getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * Gets the shortest recent round trip time to the server.
+	 *
+	 * @return round trip time in milliseconds, or -1 until sampled
+	 */
+	public synchronized long getRtt()
+	{
+		return rtt;
+	}
+
+	/**
+	 * Gets the current time on the server clock.
+	 *
+	 * @return server time in milliseconds
+	 */
+	public long now()
+	{
+		return System.currentTimeMillis() + getOffset();
+	}
+
+	/**
+	 * Converts a server time to our clock.
+	 *
+	 * @param serverTime server time in milliseconds
+	 * @return local time in milliseconds
+	 */
+	public long toLocalTime(long serverTime)
+	{
+		return serverTime - getOffset();
+	}
+
+	/**
+	 * Forgets all samples, e.g. after switching servers.
+	 */
+	public synchronized void reset()
+	{
+		count = 0;
+		next = 0;
+		offset = 0;
+		rtt = -1;
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.gimp.GimPluginConfig;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Picks the server to connect to from the comma-separated addresses in the
+ * plugin config. Servers are probed in the background for their round trip
+ * time, and traffic goes to the fastest healthy one, failing over to the
+ * next when the current one stops responding.
+ */
+@Slf4j
+public class ServerSelector
+{
+	/* Duration in milliseconds after which a probe counts as failed. */
+	public static final long PROBE_TIMEOUT = 3_000;
+
+	/* Weight of the latest probe in a server's round trip time estimate. */
+	private static final double RTT_WEIGHT = 0.3;
+
+	/* A faster server is only switched to if it saves at least this fraction of the round trip time... */
+	private static final double SWITCH_RATIO = 0.2;
+
+	/* ...and this many milliseconds, so similar servers don't flap. */
+	private static final long SWITCH_MARGIN = 30;
+
+	private final GimPluginConfig config;
+
+	private final OkHttpClient client;
+
+	/* Called whenever the selected server changes. */
+	private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+	/* Config value the servers were parsed from. */
+	private String addresses;
+
+	private List<Server> servers = new ArrayList<>();
+
+	private Server current;
+
+	public ServerSelector(GimPluginConfig config, HttpClient httpClient)
+	{
+		this.config = config;
+		client = httpClient.getClient().newBuilder()
+			.callTimeout(PROBE_TIMEOUT, TimeUnit.MILLISECONDS)
+			.build();
+	}
+
+	/**
+	 * Normalizes a server address into a base URL, adding the protocol if
+	 * missing and removing trailing slashes.
+	 *
+	 * @param address server address
+	 * @return server base URL
+	 */
+	public static String toBaseUrl(String address)
+	{
+		// Remove trailing slash(es) if exists
+		String trailingSlashes = "/+$";
+		String baseUrl = address.trim().replaceAll(trailingSlashes, "");
+		if (!baseUrl.contains("http"))
+		{
+			return "http://" + baseUrl;
+		}
+		return baseUrl;
+	}
+
+	/**
+	 * Registers a listener called whenever the selected server changes.
+	 *
+	 * @param listener server change listener
+	 */
+	public void onChange(Runnable listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * Gets the base URL of the selected server. The first configured server
+	 * is used until the others have been probed.
+	 *
+	 * @return server base URL
+	 */
+	public String getBaseUrl()
+	{
+		final String baseUrl;
+		final boolean changed;
+		synchronized (this)
+		{
+			changed = refresh();
+			baseUrl = current != null ? current.baseUrl : toBaseUrl("");
+		}
+		if (changed)
+		{
+			notifyListeners();
+		}
+		return baseUrl;
+	}
+
+	/**
+	 * Checks if more than one server is configured.
+	 *
+	 * @return whether there is a server to fail over to
+	 */
+	public boolean hasAlternatives()
+	{
+		final boolean alternatives;
+		final boolean changed;
+		synchronized (this)
+		{
+			changed = refresh();
+			alternatives = servers.size() > 1;
+		}
+		if (changed)
+		{
+			notifyListeners();
+		}
+		return alternatives;
+	}
+
+	/**
+	 * Parses the configured addresses again, e.g. right after they've been
+	 * edited, and notifies listeners if that selects a different server.
+	 *
+	 * @return whether a different server was selected
+	 */
+	public boolean reload()
+	{
+		final boolean changed;
+		synchronized (this)
+		{
+			changed = refresh();
+		}
+		if (changed)
+		{
+			notifyListeners();
+		}
+		return changed;
+	}
+
+	/**
+	 * Marks the selected server as unhealthy after a failed HTTP request,
+	 * failing over to the fastest healthy server if there is one.
+	 */
+	public void recordFailure()
+	{
+		synchronized (this)
+		{
+			if (current == null || !current.healthy)
+			{
+				return;
+			}
+			log.debug("Server " + current.baseUrl + " failed");
+			current.healthy = false;
+		}
+		select();
+	}
+
+	/**
+	 * Probes every server in the background, measuring its round trip time.
+	 * Any HTTP response counts as healthy, as only reachability matters.
+	 */
+	public void probe()
+	{
+		final List<Server> probed;
+		final boolean changed;
+		synchronized (this)
+		{
+			changed = refresh();
+			probed = new ArrayList<>(servers);
+		}
+		if (changed)
+		{
+			notifyListeners();
+		}
+		for (Server server : probed)
+		{
+			final long start = System.nanoTime();
+			Request request = new Request.Builder()
+				.url(server.baseUrl + "/")
+				.head()
+				.build();
+			client.newCall(request).enqueue(new Callback()
+			{
+				@Override
+				public void onFailure(@NonNull Call call, @NonNull IOException e)
+				{
+					synchronized (ServerSelector.this)
+					{
+						server.healthy = false;
+					}
+					select();
+				}
+
+				@Override
+				public void onResponse(@NonNull Call call, @NonNull Response response)
+				{
+					response.close();
+					final long rtt = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+					synchronized (ServerSelector.this)
+					{
+						server.rtt = server.rtt < 0 ? rtt : (long) (RTT_WEIGHT * rtt + (1 - RTT_WEIGHT) * server.rtt);
+						server.healthy = true;
+					}
+					select();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Switches to the fastest healthy server if the current one is
+	 * unhealthy, or if it's clearly faster, then notifies listeners.
+	 * Servers not probed yet rank last, in configured order.
+	 */
+	private void select()
+	{
+		synchronized (this)
+		{
+			Server best = null;
+			for (Server server : servers)
+			{
+				if (server.healthy && (best == null || rank(server) < rank(best)))
+				{
+					best = server;
+				}
+			}
+			if (best == null || best == current)
+			{
+				return;
+			}
+			final boolean failover = current == null || !current.healthy;
+			final boolean faster = current.rtt >= 0 && best.rtt >= 0
+				&& current.rtt - best.rtt >= Math.max(SWITCH_MARGIN, current.rtt * SWITCH_RATIO);
+			if (!failover && !faster)
+			{
+				return;
+			}
+			log.debug("Switching server to " + best.baseUrl + " (" + best.rtt + "ms)"
+				+ (failover ? ", current server failed" : ""));
+			current = best;
+		}
+		notifyListeners();
+	}
+
+	private void notifyListeners()
+	{
+		for (Runnable listener : listeners)
+		{
+			listener.run();
+		}
+	}
+
+	private static long rank(Server server)
+	{
+		return server.rtt >= 0 ? server.rtt : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Parses the configured addresses again if they've changed. A changed
+	 * list starts over with its first server. Listeners must be notified
+	 * of a change once the lock is released.
+	 *
+	 * @return whether a server selected before was replaced
+	 */
+	private boolean refresh()
+	{
+		final String configAddresses = config.serverAddress();
+		if (configAddresses.equals(addresses))
+		{
+			return false;
+		}
+		final boolean parsed = addresses != null;
+		final String previous = current != null ? current.baseUrl : null;
+		addresses = configAddresses;
+		servers = new ArrayList<>();
+		for (String address : configAddresses.split(","))
+		{
+			if (!address.trim().isEmpty())
+			{
+				servers.add(new Server(toBaseUrl(address)));
+			}
+		}
+		current = servers.isEmpty() ? null : servers.get(0);
+		return parsed && !Objects.equals(previous, current != null ? current.baseUrl : null);
+	}
+
+	private static class Server
+	{
+		private final String baseUrl;
+
+		/* Estimated round trip time in milliseconds, -1 until probed. */
+		private long rtt = -1;
+
+		private boolean healthy = true;
+
+		Server(String baseUrl)
+		{
+			this.baseUrl = baseUrl;
+		}
+	}
+}
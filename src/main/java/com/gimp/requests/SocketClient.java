@@ -26,34 +26,71 @@ package com.gimp.requests;
 
 import com.gimp.GimPluginConfig;
 import io.socket.client.Ack;
+import io.socket.client.Manager;
 import io.socket.client.Socket;
+import io.socket.emitter.Emitter;
+import io.socket.engineio.client.Transport;
 import io.socket.engineio.client.transports.Polling;
 import io.socket.engineio.client.transports.WebSocket;
 import java.net.URI;
 import io.socket.client.IO;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 @Slf4j
-public class SocketClient extends RequestClient
+public class SocketClient extends RealtimeClient
 {
 	@Getter
 	public Socket client;
 
 	private static final String EVENT_CONNECTION_ACK = "connection-ack";
 
-	public SocketClient(String namespace, GimPluginConfig config)
+	/* Duration in milliseconds to wait for the room join to be acknowledged. */
+	private static final long HANDSHAKE_DEADLINE = 2_000;
+
+	/* Duration in milliseconds to wait for a connection to servers never connected to. */
+	private static final long CONNECT_TIMEOUT = 20_000;
+
+	/* Shortest connection timeout used for servers with a known handshake time. */
+	private static final long MIN_CONNECT_TIMEOUT = 5_000;
+
+	/* Transports that last worked for each server, or null to always start on polling. */
+	public TransportCache transports;
+
+	/* Used until the server agrees on a format, and by servers that don't negotiate. */
+	private final PayloadCodec defaultCodec;
+
+	/* Formats offered to the server, in order of preference. */
+	private final PayloadCodec[] offeredCodecs;
+
+	/* Whether the server accepts a version cursor with pings. */
+	private boolean pingCursors;
+
+	public SocketClient(String namespace, GimPluginConfig config, PayloadCodec defaultCodec, PayloadCodec... offeredCodecs)
 	{
 		this.namespace = namespace;
 		this.config = config;
+		this.defaultCodec = defaultCodec;
+		this.offeredCodecs = offeredCodecs;
+		codec = defaultCodec;
 	}
 
 	/**
 	 * Connects the socket to the server at the base URL, using default config
 	 * for the connection. On connection, sets up socket listeners for socket
-	 * lifecycle events, e.g. connect, disconnect, connect_error.
+	 * lifecycle events, e.g. connect, disconnect, connect_error. The payload
+	 * format is negotiated when joining the group's room. Starts on the
+	 * transport that last worked for the server, if known.
 	 */
 	public void connect()
 	{
@@ -62,16 +99,24 @@ public class SocketClient extends RequestClient
 			log.warn("Invalid socket URL, aborting");
 			return;
 		}
-		URI uri = URI.create(getBaseUrl());
+		final String server = getBaseUrl();
+		final String[] transportNames = transports != null ? transports.getTransports(server) : new String[]{Polling.NAME, WebSocket.NAME};
+		long timeout = CONNECT_TIMEOUT;
+		final Long handshakeTime = transports != null ? transports.getHandshakeTime(server) : null;
+		if (handshakeTime != null)
+		{
+			timeout = Math.min(CONNECT_TIMEOUT, Math.max(MIN_CONNECT_TIMEOUT, handshakeTime * 4));
+		}
+		URI uri = URI.create(server);
 		IO.Options options = IO.Options.builder()
-			// IO factory options
-			.setForceNew(false).setMultiplex(true)
+			// IO factory options, a new manager so the transports always apply
+			.setForceNew(true)
 
 			// low-level engine options
-			.setTransports(new String[]{Polling.NAME, WebSocket.NAME}).setUpgrade(true).setRememberUpgrade(false).setPath("/socket.io/").setQuery(null).setExtraHeaders(null)
+			.setTransports(transportNames).setUpgrade(transportNames.length > 1).setRememberUpgrade(false).setPath("/socket.io/").setQuery(null).setExtraHeaders(null)
 
-			// Manager options
-			.setReconnection(true).setReconnectionAttempts(Integer.MAX_VALUE).setReconnectionDelay(1_000).setReconnectionDelayMax(5_000).setRandomizationFactor(0.5).setTimeout(20_000)
+			// Manager options, reconnects are left to the connection supervisor
+			.setReconnection(false).setTimeout(timeout)
 
 			// Socket options
 			.setAuth(null).build();
@@ -80,24 +125,185 @@ public class SocketClient extends RequestClient
 			client.close();
 		}
 		client = IO.socket(uri, options);
+		if (transports != null)
+		{
+			trackTransports(client.io(), server, transportNames[0]);
+		}
+		// Any socket.io packet, e.g. an ack or broadcast, shows the server is still handling the connection
+		client.io().on(Manager.EVENT_PACKET, args -> recordActivity());
+		final long connectStart = System.currentTimeMillis();
 		client.connect();
 
 		client.on(Socket.EVENT_CONNECT, args -> {
-			log.debug("Socket connected");
+			log.debug("Socket connected over " + transportNames[0]);
+			recordActivity();
+			if (transports != null)
+			{
+				transports.recordHandshake(server, transportNames[0], System.currentTimeMillis() - connectStart);
+			}
 			String roomId = namespace;
-			client.emit(EVENT_CONNECTION_ACK, roomId);
+			codec = defaultCodec;
+			pingCursors = false;
+			handshake(roomId);
 		});
 
 		client.on(Socket.EVENT_DISCONNECT, args -> {
 			log.debug("Socket disconnected");
 		});
 
+		// The connection supervisor listens for this too, and reconnects
 		client.on(Socket.EVENT_CONNECT_ERROR, args -> {
-			log.warn("Failed to connect to socket server, closing");
-			client.close();
+			log.warn("Failed to connect to socket server");
+		});
+	}
+
+	/**
+	 * Records whether WebSockets opened by the manager worked, whether
+	 * connected to directly or probed as an upgrade from polling.
+	 *
+	 * @param manager        manager of the socket
+	 * @param server         base URL of the server
+	 * @param firstTransport transport the connection is opened on
+	 */
+	private void trackTransports(Manager manager, String server, String firstTransport)
+	{
+		final boolean probe = !WebSocket.NAME.equals(firstTransport);
+		manager.on(Manager.EVENT_TRANSPORT, args -> {
+			Transport transport = (Transport) args[0];
+			if (!WebSocket.NAME.equals(transport.name))
+			{
+				return;
+			}
+			// Errors after opening are dropped connections, not a blocked transport
+			final AtomicBoolean opened = new AtomicBoolean();
+			transport.once(Transport.EVENT_OPEN, openArgs -> {
+				opened.set(true);
+				transports.recordWebSocket(server);
+			});
+			transport.once(Transport.EVENT_ERROR, errorArgs -> {
+				if (!opened.get())
+				{
+					transports.recordWebSocketFailure(server, probe);
+				}
+			});
 		});
 	}
 
+	/**
+	 * Joins the group's room, asking the server to resume the session, then
+	 * emits the session event. Servers that don't acknowledge the join in
+	 * time are treated as not having resumed it. The join isn't a request,
+	 * so it's kept out of the in-flight and timeout counts.
+	 *
+	 * @param roomId room to join
+	 */
+	private void handshake(String roomId)
+	{
+		final Socket socket = client;
+		final CompletableFuture<Boolean> ack = new CompletableFuture<>();
+		socket.emit(EVENT_CONNECTION_ACK, roomId, getConnectionOptions(), (Ack) ackArgs -> {
+			ack.complete(onConnectionAck(ackArgs));
+		});
+		expire(ack, HANDSHAKE_DEADLINE).whenComplete((result, ex) -> {
+			final boolean resumed = Boolean.TRUE.equals(result);
+			log.debug("Socket session " + (resumed ? "resumed" : "started"));
+			// Socket.emit sends to the server, so local listeners are called directly
+			for (Emitter.Listener listener : socket.listeners(EVENT_SESSION))
+			{
+				listener.call(resumed);
+			}
+		});
+	}
+
+	/**
+	 * Builds the options sent when joining the group's room, including the
+	 * session to resume. Servers that predate these options ignore them and
+	 * never acknowledge the join.
+	 *
+	 * @return connection options
+	 */
+	private JSONObject getConnectionOptions()
+	{
+		JSONObject options = new JSONObject();
+		List<String> codecNames = new ArrayList<>();
+		for (PayloadCodec offeredCodec : offeredCodecs)
+		{
+			codecNames.add(offeredCodec.getName());
+		}
+		try
+		{
+			options.put("codecs", new JSONArray(codecNames));
+			options.put("session", sessionId);
+			options.put("compression", Compression.NAME);
+			options.put("compressionThreshold", Compression.THRESHOLD);
+			if (resumeCursor != null)
+			{
+				options.put("since", resumeCursor);
+			}
+		}
+		catch (JSONException e)
+		{
+			log.warn("Failed to build connection options: " + e);
+		}
+		return options;
+	}
+
+	/**
+	 * Applies the options chosen by the server in its acknowledgement of
+	 * the room join: the payload format, and whether pings take a version
+	 * cursor.
+	 *
+	 * @param ackArgs acknowledgement data
+	 * @return whether the server resumed the session, replaying missed broadcasts
+	 */
+	private boolean onConnectionAck(Object... ackArgs)
+	{
+		if (ackArgs.length == 0 || !(ackArgs[0] instanceof JSONObject))
+		{
+			return false;
+		}
+		JSONObject ack = (JSONObject) ackArgs[0];
+		pingCursors = ack.optBoolean("pingCursors", false);
+		String codecName = ack.optString("codec", defaultCodec.getName());
+		for (PayloadCodec offeredCodec : offeredCodecs)
+		{
+			if (offeredCodec.getName().equals(codecName))
+			{
+				log.debug("Negotiated payload codec: " + codecName);
+				codec = offeredCodec;
+				break;
+			}
+		}
+		return ack.optBoolean("resumed", false);
+	}
+
+	/**
+	 * Registers a listener for a socket event.
+	 *
+	 * @param event    event name
+	 * @param listener event listener
+	 */
+	public void on(String event, EventEmitter.Listener listener)
+	{
+		if (client != null)
+		{
+			client.on(event, listener::call);
+		}
+	}
+
+	/**
+	 * Removes all listeners for a socket event.
+	 *
+	 * @param event event name
+	 */
+	public void off(String event)
+	{
+		if (client != null)
+		{
+			client.off(event);
+		}
+	}
+
 	/**
 	 * Disconnects the client from the socket server.
 	 */
@@ -126,35 +332,95 @@ public class SocketClient extends RequestClient
 	/**
 	 * Sends a socket message to the ping listener. Expects an acknowledgement
 	 * from the server, and returns the JSON data in that acknowledgement.
+	 * The version cursor is only sent to servers that accept it, as older
+	 * servers expect the acknowledgement as the first argument. Identical
+	 * pings in flight share one message.
 	 *
+	 * @param since version cursor of the last ping data, or null for all data
 	 * @return future of ack data in JSON
 	 */
-	public CompletableFuture<String> ping()
+	public CompletableFuture<String> ping(Long since)
 	{
 		String EVENT_PING = "ping";
-		CompletableFuture<String> socketResponse = new CompletableFuture<>();
-		client.emit(EVENT_PING, (Ack) args -> {
-			JSONObject data = (JSONObject) args[0];
-			socketResponse.complete(data.toString());
+		final Long cursor = pingCursors ? since : null;
+		return register(EVENT_PING + ":" + cursor, () -> {
+			CompletableFuture<String> socketResponse = new CompletableFuture<>();
+			Ack onAck = args -> {
+				try
+				{
+					socketResponse.complete(readPingAck(args));
+				}
+				catch (IOException e)
+				{
+					socketResponse.completeExceptionally(e);
+				}
+			};
+			if (cursor != null)
+			{
+				JSONObject query = new JSONObject();
+				try
+				{
+					query.put("since", cursor);
+				}
+				catch (JSONException e)
+				{
+					log.warn("Failed to build ping query: " + e);
+				}
+				client.emit(EVENT_PING, query, onAck);
+			}
+			else
+			{
+				client.emit(EVENT_PING, onAck);
+			}
+			return socketResponse;
 		});
-		return socketResponse;
 	}
 
 	/**
-	 * Sends a socket message to the broadcast listener. Passes the JSON data
-	 * as the data parameter and expects an acknowledgement from the server.
+	 * Reads the JSON data of a ping acknowledgement. Servers that agreed to
+	 * compression send acks above the threshold as compressed binary data.
+	 *
+	 * @param ackArgs acknowledgement data
+	 * @return ack data in JSON
+	 * @throws IOException if the ack has no data or compressed data is malformed
+	 */
+	static String readPingAck(Object... ackArgs) throws IOException
+	{
+		if (ackArgs.length == 0 || ackArgs[0] == null)
+		{
+			throw new IOException("Ping ack has no data");
+		}
+		if (ackArgs[0] instanceof byte[])
+		{
+			return new String(Compression.inflate((byte[]) ackArgs[0]), StandardCharsets.UTF_8);
+		}
+		return ackArgs[0].toString();
+	}
+
+	/**
+	 * Sends a socket message to the broadcast listener. Passes the data,
+	 * encoded with the negotiated codec, as the data parameter and expects
+	 * an acknowledgement from the server.
 	 *
-	 * @param dataJson future of ack data in JSON
+	 * @param data     request data
+	 * @param priority priority of the broadcast
 	 * @return future of ack data in JSON
 	 */
-	public CompletableFuture<String> broadcast(String dataJson)
+	public CompletableFuture<String> broadcast(Map<String, Object> data, Priority priority)
 	{
-		String EVENT_BROADCAST = "broadcast";
-		CompletableFuture<String> socketResponse = new CompletableFuture<>();
-		client.emit(EVENT_BROADCAST, dataJson, (Ack) args -> {
-			JSONObject data = (JSONObject) args[0];
-			socketResponse.complete(data.toString());
+		byte[] payload = codec.encode(data);
+		Object message = codec.isBinary() ? payload : new String(payload, StandardCharsets.UTF_8);
+		return register(null, priority, () -> {
+			CompletableFuture<String> socketResponse = new CompletableFuture<>();
+			client.emit(EVENT_BROADCAST, message, (Ack) args -> {
+				if (args.length == 0 || args[0] == null)
+				{
+					socketResponse.completeExceptionally(new IOException("Broadcast ack has no data"));
+					return;
+				}
+				socketResponse.complete(args[0].toString());
+			});
+			return socketResponse;
 		});
-		return socketResponse;
 	}
 }
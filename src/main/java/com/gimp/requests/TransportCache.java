@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import io.socket.engineio.client.transports.Polling;
+import io.socket.engineio.client.transports.WebSocket;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Remembers, per server, which socket transport last worked and how long
+ * the handshake took, persisted to a file so they survive restarts. Servers
+ * known to take WebSockets are connected to over a WebSocket directly,
+ * skipping the polling round trips before the upgrade, and networks known
+ * to block WebSockets stay on polling without probing them.
+ */
+@Slf4j
+public class TransportCache
+{
+	/* Duration in milliseconds a failed WebSocket probe keeps a server on polling. */
+	private static final long BLOCKED_DURATION = 24 * 60 * 60 * 1000;
+
+	private static final Type ENTRIES_TYPE = new TypeToken<Map<String, Entry>>()
+	{
+	}.getType();
+
+	private static class Entry
+	{
+		/* Transport to start on. */
+		String transport;
+
+		/* Duration in milliseconds of the last handshake. */
+		long handshakeTime;
+
+		/* Time the last WebSocket probe failed while polling worked, or 0 if it didn't. */
+		long blockedAt;
+	}
+
+	private final File file;
+
+	private final Gson gson;
+
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	public TransportCache(File file, Gson gson)
+	{
+		this.file = file;
+		this.gson = gson;
+	}
+
+	/**
+	 * Loads the transports saved by previous sessions.
+	 */
+	public synchronized void load()
+	{
+		if (!file.exists())
+		{
+			return;
+		}
+		try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+		{
+			Map<String, Entry> saved = gson.fromJson(reader, ENTRIES_TYPE);
+			if (saved != null)
+			{
+				entries.putAll(saved);
+			}
+		}
+		catch (IOException | JsonParseException e)
+		{
+			log.warn("Failed to load transport cache: " + e);
+		}
+	}
+
+	/**
+	 * Gets the transports to connect to a server with, in order. Only the
+	 * first is used to open the connection, and later ones are upgrades.
+	 *
+	 * @param server base URL of the server
+	 * @return transport names
+	 */
+	public synchronized String[] getTransports(String server)
+	{
+		Entry entry = entries.get(server);
+		if (entry == null)
+		{
+			return new String[]{Polling.NAME, WebSocket.NAME};
+		}
+		if (isBlocked(entry))
+		{
+			return new String[]{Polling.NAME};
+		}
+		if (WebSocket.NAME.equals(entry.transport))
+		{
+			return new String[]{WebSocket.NAME};
+		}
+		return new String[]{Polling.NAME, WebSocket.NAME};
+	}
+
+	/**
+	 * Gets the duration of the last handshake with a server.
+	 *
+	 * @param server base URL of the server
+	 * @return handshake duration in milliseconds, or null if never connected
+	 */
+	public synchronized Long getHandshakeTime(String server)
+	{
+		Entry entry = entries.get(server);
+		return entry != null && entry.handshakeTime > 0 ? entry.handshakeTime : null;
+	}
+
+	/**
+	 * Records a completed handshake with a server.
+	 *
+	 * @param server        base URL of the server
+	 * @param transport     transport the connection was opened on
+	 * @param handshakeTime duration of the handshake in milliseconds
+	 */
+	public synchronized void recordHandshake(String server, String transport, long handshakeTime)
+	{
+		Entry entry = getEntry(server);
+		if (entry.transport == null)
+		{
+			entry.transport = transport;
+		}
+		entry.handshakeTime = handshakeTime;
+		save();
+	}
+
+	/**
+	 * Records a WebSocket opened to a server, so the next connection starts
+	 * on one.
+	 *
+	 * @param server base URL of the server
+	 */
+	public synchronized void recordWebSocket(String server)
+	{
+		Entry entry = getEntry(server);
+		if (WebSocket.NAME.equals(entry.transport) && entry.blockedAt == 0)
+		{
+			return;
+		}
+		entry.transport = WebSocket.NAME;
+		entry.blockedAt = 0;
+		save();
+	}
+
+	/**
+	 * Records a WebSocket that failed to open. A failed direct connection
+	 * may just be the server being down, so the next connection probes it
+	 * again from polling; a failed probe while polling works means the
+	 * network blocks WebSockets.
+	 *
+	 * @param server base URL of the server
+	 * @param probe  whether the WebSocket was an upgrade probe
+	 */
+	public synchronized void recordWebSocketFailure(String server, boolean probe)
+	{
+		Entry entry = getEntry(server);
+		entry.transport = Polling.NAME;
+		if (probe)
+		{
+			log.debug("WebSockets blocked for " + server + ", staying on polling");
+			entry.blockedAt = System.currentTimeMillis();
+		}
+		save();
+	}
+
+	private boolean isBlocked(Entry entry)
+	{
+		return entry.blockedAt > 0 && System.currentTimeMillis() - entry.blockedAt < BLOCKED_DURATION;
+	}
+
+	private Entry getEntry(String server)
+	{
+		return entries.computeIfAbsent(server, s -> new Entry());
+	}
+
+	/**
+	 * Writes the cache to a temporary file and moves it into place, so a
+	 * crash mid-write can't corrupt it.
+	 */
+	private void save()
+	{
+		try
+		{
+			File directory = file.getParentFile();
+			if (directory != null && !directory.exists() && !directory.mkdirs())
+			{
+				throw new IOException("Failed to create " + directory);
+			}
+			File temp = new File(file.getPath() + ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8))
+			{
+				gson.toJson(entries, ENTRIES_TYPE, writer);
+			}
+			try
+			{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to save transport cache: " + e);
+		}
+	}
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2021, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.gimp.GimPluginConfig;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Realtime client speaking a minimal framed protocol over a plain WebSocket,
+ * using the OkHttp client the HTTP fallback already runs on.
+ * <p>
+ * The client connects to /ws/{namespace}, offering its payload formats in
+ * the "codecs" query parameter and the session to resume in "session" and
+ * "since". Text frames are JSON objects:
+ * <pre>
+ * {"type": "hello", "data": {...}}                 server options, sent on open
+ * {"type": "ping", "id": 1, "data": {...}}         request, answered by an ack
+ * {"type": "broadcast", "id": 2, "data": {...}}    request, or a push without an id
+ * {"type": "ack", "id": 2, "data": {...}}          answer to the request with that id
+ * </pre>
+ * With a binary format, broadcasts are binary frames instead: a type byte,
+ * a 4 byte request id (0 for pushes) and the encoded payload. Acks above
+ * the threshold in "compressionThreshold" may be sent compressed, as
+ * binary frames with their own type byte and the compressed JSON data.
+ */
+@Slf4j
+public class WebSocketClient extends RealtimeClient
+{
+	private static final String TYPE_HELLO = "hello";
+
+	private static final String TYPE_PING = "ping";
+
+	private static final String TYPE_BROADCAST = "broadcast";
+
+	private static final String TYPE_ACK = "ack";
+
+	private static final byte BINARY_BROADCAST = 1;
+
+	private static final byte BINARY_COMPRESSED_ACK = 2;
+
+	/* Normal closure status code. */
+	private static final int CLOSE_NORMAL = 1000;
+
+	private final OkHttpClient client;
+
+	private final PayloadCodec defaultCodec;
+
+	private final PayloadCodec[] offeredCodecs;
+
+	private final AtomicInteger nextRequestId = new AtomicInteger();
+
+	/* Requests waiting for an ack, by request id. */
+	private final Map<Integer, CompletableFuture<String>> pendingAcks = new ConcurrentHashMap<>();
+
+	private volatile WebSocket webSocket;
+
+	/* Listeners of the current connection. */
+	private volatile EventEmitter emitter = new EventEmitter();
+
+	private volatile boolean connected;
+
+	private volatile boolean pingCursors;
+
+	public WebSocketClient(String namespace, GimPluginConfig config, HttpClient httpClient, PayloadCodec defaultCodec, PayloadCodec... offeredCodecs)
+	{
+		this.namespace = namespace;
+		this.config = config;
+		this.defaultCodec = defaultCodec;
+		this.offeredCodecs = offeredCodecs;
+		codec = defaultCodec;
+		// Shares the HTTP client's threads and connection pool
+		client = httpClient.getClient().newBuilder()
+			.readTimeout(0, TimeUnit.MILLISECONDS)
+			.pingInterval(20, TimeUnit.SECONDS)
+			.build();
+	}
+
+	/**
+	 * Opens a WebSocket to the server at the base URL, closing any existing
+	 * one. Listeners of the previous connection are dropped.
+	 */
+	public synchronized void connect()
+	{
+		if (!validateUrl())
+		{
+			log.warn("Invalid WebSocket URL, aborting");
+			return;
+		}
+		if (webSocket != null)
+		{
+			webSocket.close(CLOSE_NORMAL, null);
+		}
+		failPendingAcks();
+		emitter = new EventEmitter();
+		connected = false;
+		pingCursors = false;
+		codec = defaultCodec;
+		StringBuilder codecNames = new StringBuilder();
+		for (PayloadCodec offeredCodec : offeredCodecs)
+		{
+			codecNames.append(codecNames.length() > 0 ? "," : "").append(offeredCodec.getName());
+		}
+		Request request = new Request.Builder()
+			.url(getBaseUrl() + "/ws/" + namespace + "?codecs=" + codecNames + getSessionQuery()
+				+ "&compression=" + Compression.NAME + "&compressionThreshold=" + Compression.THRESHOLD)
+			.build();
+		webSocket = client.newWebSocket(request, new Listener(emitter));
+	}
+
+	/**
+	 * Closes the WebSocket.
+	 */
+	public synchronized void disconnect()
+	{
+		if (webSocket != null)
+		{
+			webSocket.close(CLOSE_NORMAL, null);
+		}
+		failPendingAcks();
+	}
+
+	public boolean isConnected()
+	{
+		return connected;
+	}
+
+	public void on(String event, EventEmitter.Listener listener)
+	{
+		emitter.on(event, listener);
+	}
+
+	public void off(String event)
+	{
+		emitter.off(event);
+	}
+
+	/**
+	 * Sends a ping frame, with the version cursor if the server accepts it,
+	 * and returns the data of its ack. Identical pings in flight share one
+	 * frame.
+	 *
+	 * @param since version cursor of the last ping data, or null for all data
+	 * @return future of ack data in JSON
+	 */
+	public CompletableFuture<String> ping(Long since)
+	{
+		final Long cursor = pingCursors ? since : null;
+		return register(TYPE_PING + ":" + cursor, () -> {
+			JSONObject query = new JSONObject();
+			if (cursor != null)
+			{
+				try
+				{
+					query.put("since", cursor);
+				}
+				catch (JSONException e)
+				{
+					log.warn("Failed to build ping query: " + e);
+				}
+			}
+			return request(TYPE_PING, query.toString());
+		});
+	}
+
+	/**
+	 * Sends a broadcast frame with the data encoded with the negotiated codec,
+	 * and returns the data of its ack.
+	 *
+	 * @param data     request data
+	 * @param priority priority of the broadcast
+	 * @return future of ack data in JSON
+	 */
+	public CompletableFuture<String> broadcast(Map<String, Object> data, Priority priority)
+	{
+		final PayloadCodec broadcastCodec = codec;
+		final byte[] payload = broadcastCodec.encode(data);
+		return register(null, priority, () -> {
+			if (!broadcastCodec.isBinary())
+			{
+				return request(TYPE_BROADCAST, new String(payload, StandardCharsets.UTF_8));
+			}
+			final int id = nextRequestId.incrementAndGet();
+			CompletableFuture<String> ack = awaitAck(id);
+			ByteBuffer frame = ByteBuffer.allocate(5 + payload.length);
+			frame.put(BINARY_BROADCAST).putInt(id).put(payload);
+			frame.flip();
+			send(ack, webSocket != null && webSocket.send(ByteString.of(frame)));
+			return ack;
+		});
+	}
+
+	/**
+	 * Sends a request frame with JSON data, and returns the data of its ack.
+	 *
+	 * @param type     request type
+	 * @param dataJson request data in JSON
+	 * @return future of ack data in JSON
+	 */
+	private CompletableFuture<String> request(String type, String dataJson)
+	{
+		final int id = nextRequestId.incrementAndGet();
+		CompletableFuture<String> ack = awaitAck(id);
+		// Data is already JSON, so it's spliced in rather than parsed again
+		String frame = "{\"type\":\"" + type + "\",\"id\":" + id + ",\"data\":" + dataJson + "}";
+		send(ack, webSocket != null && webSocket.send(frame));
+		return ack;
+	}
+
+	private CompletableFuture<String> awaitAck(int id)
+	{
+		CompletableFuture<String> ack = new CompletableFuture<>();
+		pendingAcks.put(id, ack);
+		ack.whenComplete((result, ex) -> pendingAcks.remove(id));
+		return ack;
+	}
+
+	private static void send(CompletableFuture<String> ack, boolean queued)
+	{
+		if (!queued)
+		{
+			ack.completeExceptionally(new IllegalStateException("WebSocket is closed"));
+		}
+	}
+
+	/**
+	 * Fails the requests waiting for an ack, which can't arrive once their
+	 * connection is gone, rather than leaving them to their deadline.
+	 */
+	private void failPendingAcks()
+	{
+		for (CompletableFuture<String> ack : pendingAcks.values())
+		{
+			ack.completeExceptionally(new IllegalStateException("WebSocket is closed"));
+		}
+	}
+
+	private class Listener extends WebSocketListener
+	{
+		/* Listeners of the connection this listener belongs to. */
+		private final EventEmitter connectionEmitter;
+
+		Listener(EventEmitter connectionEmitter)
+		{
+			this.connectionEmitter = connectionEmitter;
+		}
+
+		@Override
+		public void onOpen(@NonNull WebSocket webSocket, @NonNull Response response)
+		{
+			// A connection replaced while it was opening must not mark the client connected
+			if (connectionEmitter != emitter)
+			{
+				log.debug("Closing a replaced WebSocket that opened late");
+				webSocket.close(CLOSE_NORMAL, null);
+				return;
+			}
+			log.debug("WebSocket connected");
+			recordActivity();
+			connected = true;
+			connectionEmitter.emit(EVENT_CONNECT);
+		}
+
+		@Override
+		public void onMessage(@NonNull WebSocket webSocket, @NonNull String text)
+		{
+			recordActivity();
+			try
+			{
+				JSONObject frame = new JSONObject(text);
+				String type = frame.optString("type");
+				JSONObject data = frame.optJSONObject("data");
+				if (TYPE_ACK.equals(type))
+				{
+					CompletableFuture<String> ack = pendingAcks.get(frame.optInt("id"));
+					if (ack != null)
+					{
+						ack.complete(data != null ? data.toString() : "{}");
+					}
+				}
+				else if (TYPE_BROADCAST.equals(type) && data != null)
+				{
+					connectionEmitter.emit(EVENT_BROADCAST, data);
+				}
+				else if (TYPE_HELLO.equals(type) && data != null)
+				{
+					onHello(data);
+				}
+			}
+			catch (JSONException e)
+			{
+				log.warn("Malformed WebSocket frame: " + e);
+			}
+		}
+
+		@Override
+		public void onMessage(@NonNull WebSocket webSocket, @NonNull ByteString bytes)
+		{
+			recordActivity();
+			ByteBuffer frame = bytes.asByteBuffer();
+			final byte type = frame.remaining() >= 5 ? frame.get() : 0;
+			if (type != BINARY_BROADCAST && type != BINARY_COMPRESSED_ACK)
+			{
+				log.warn("Malformed binary WebSocket frame");
+				return;
+			}
+			final int id = frame.getInt();
+			byte[] payload = new byte[frame.remaining()];
+			frame.get(payload);
+			if (type == BINARY_COMPRESSED_ACK)
+			{
+				onCompressedAck(id, payload);
+				return;
+			}
+			// Binary broadcasts from the server are always pushes, so the id is unused
+			connectionEmitter.emit(EVENT_BROADCAST, (Object) payload);
+		}
+
+		private void onCompressedAck(int id, byte[] payload)
+		{
+			CompletableFuture<String> ack = pendingAcks.get(id);
+			if (ack == null)
+			{
+				return;
+			}
+			try
+			{
+				ack.complete(new String(Compression.inflate(payload), StandardCharsets.UTF_8));
+			}
+			catch (IOException e)
+			{
+				ack.completeExceptionally(e);
+			}
+		}
+
+		@Override
+		public void onClosing(@NonNull WebSocket webSocket, int code, @NonNull String reason)
+		{
+			webSocket.close(CLOSE_NORMAL, null);
+		}
+
+		@Override
+		public void onClosed(@NonNull WebSocket webSocket, int code, @NonNull String reason)
+		{
+			log.debug("WebSocket disconnected");
+			onDisconnect(EVENT_DISCONNECT);
+		}
+
+		@Override
+		public void onFailure(@NonNull WebSocket webSocket, @NonNull Throwable t, Response response)
+		{
+			log.warn("WebSocket failure: " + t);
+			onDisconnect(connected ? EVENT_DISCONNECT : EVENT_CONNECT_ERROR);
+		}
+
+		private void onDisconnect(String event)
+		{
+			// Only the current connection changes the connection state
+			if (connectionEmitter == emitter)
+			{
+				connected = false;
+				failPendingAcks();
+			}
+			connectionEmitter.emit(event);
+		}
+
+		/**
+		 * Applies the options chosen by the server: the payload format, and
+		 * whether pings take a version cursor. Then emits the session event
+		 * with whether the server resumed the session. Hellos from replaced
+		 * connections are ignored, so they can't change the current one's options.
+		 *
+		 * @param options server options
+		 */
+		private void onHello(JSONObject options)
+		{
+			if (connectionEmitter != emitter)
+			{
+				log.debug("Ignoring hello from a replaced WebSocket");
+				return;
+			}
+			pingCursors = options.optBoolean("pingCursors", false);
+			String codecName = options.optString("codec", defaultCodec.getName());
+			for (PayloadCodec offeredCodec : offeredCodecs)
+			{
+				if (offeredCodec.getName().equals(codecName))
+				{
+					log.debug("Negotiated payload codec: " + codecName);
+					codec = offeredCodec;
+					break;
+				}
+			}
+			connectionEmitter.emit(EVENT_SESSION, options.optBoolean("resumed", false));
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package com.gimp;
+
+import com.gimp.gimps.GimField;
+import com.gimp.gimps.GimLocation;
+import com.gimp.gimps.GimPlayer;
+import com.gimp.gimps.GimUpdate;
+import com.gimp.requests.BinaryCodec;
+import com.gimp.requests.BroadcastOutbox;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.json.JSONObject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GimBroadcastManagerTest
+{
+	private final AtomicReference<String> serverAddress = new AtomicReference<>();
+
+	private final GimPluginConfig config = new GimPluginConfig()
+	{
+		@Override
+		public String serverAddress()
+		{
+			return serverAddress.get();
+		}
+
+		@Override
+		public int broadcastWindow()
+		{
+			return 0;
+		}
+
+		@Override
+		public Transport transport()
+		{
+			return Transport.WEBSOCKET;
+		}
+	};
+
+	private File directory;
+
+	private RecordingServer first;
+
+	private RecordingServer second;
+
+	private GimBroadcastManager manager;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory("gimp").toFile();
+		first = new RecordingServer();
+		second = new RecordingServer();
+		serverAddress.set(first.getAddress());
+		manager = new GimBroadcastManager("group", config, new Gson(), directory);
+	}
+
+	@After
+	public void tearDown()
+	{
+		manager.disconnect();
+		manager.shutdown();
+		first.stop();
+		second.stop();
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void sendsFullStateAndUncursoredPingToChangedServer() throws Exception
+	{
+		first.pingReply = "{\"version\":5,\"full\":true,\"gimps\":{}}";
+		manager.ping().get(5, TimeUnit.SECONDS);
+		assertEquals("/ping/group", first.takePing());
+		GimPlayer gimp = gimp();
+		gimp.markAllDirty();
+		manager.broadcast(gimp);
+		assertEquals(50, first.takeBroadcast().getInt("hp"));
+		gimp.setHp(45);
+		gimp.markDirty(GimField.HP);
+		manager.broadcast(gimp);
+		JSONObject delta = first.takeBroadcast();
+		assertEquals(45, delta.getInt("hp"));
+		assertFalse(delta.has("maxHp"));
+		manager.ping().get(5, TimeUnit.SECONDS);
+		assertEquals("/ping/group?since=5", first.takePing());
+
+		serverAddress.set(second.getAddress());
+		manager.reconnect();
+
+		JSONObject full = second.takeBroadcast();
+		assertEquals("Gimp", full.getString("name"));
+		assertEquals(45, full.getInt("hp"));
+		assertEquals(99, full.getInt("maxHp"));
+		assertEquals(40, full.getInt("prayer"));
+		assertEquals(70, full.getInt("maxPrayer"));
+		assertTrue(full.has("location"));
+		manager.ping().get(5, TimeUnit.SECONDS);
+		assertEquals("/ping/group", second.takePing());
+	}
+
+	@Test
+	public void resendsFieldsOfFailedBroadcast() throws Exception
+	{
+		first.failBroadcasts = 1;
+		GimPlayer gimp = gimp();
+		gimp.markAllDirty();
+		manager.broadcast(gimp);
+		assertEquals(40, first.takeRefused().getInt("prayer"));
+		gimp.setPrayer(35);
+		gimp.markDirty(GimField.PRAYER);
+		manager.broadcast(gimp);
+
+		JSONObject resent = first.takeBroadcast();
+		assertEquals(50, resent.getInt("hp"));
+		assertEquals(99, resent.getInt("maxHp"));
+		assertEquals(35, resent.getInt("prayer"));
+		assertEquals(70, resent.getInt("maxPrayer"));
+		assertTrue(resent.has("location"));
+	}
+
+	@Test
+	public void drainsOutboxOnceHttpWorks() throws Exception
+	{
+		Map<String, Object> failed = new HashMap<>();
+		failed.put("name", "Gimp");
+		failed.put("hp", 50);
+		new BroadcastOutbox(new File(directory, "outbox-group.json"), new Gson()).add(failed);
+		GimBroadcastManager restored = new GimBroadcastManager("group", config, new Gson(), directory);
+		try
+		{
+			restored.broadcast(gimp());
+			restored.ping().get(5, TimeUnit.SECONDS);
+
+			JSONObject drained = first.takeBroadcast();
+			assertEquals("Gimp", drained.getString("name"));
+			assertEquals(50, drained.getInt("hp"));
+		}
+		finally
+		{
+			restored.shutdown();
+		}
+	}
+
+	@Test
+	public void dropsMalformedBroadcasts()
+	{
+		BinaryCodec codec = new BinaryCodec();
+		manager.getSocketClient().codec = codec;
+		Map<String, Object> data = new HashMap<>();
+		data.put("name", "Gimp");
+		data.put("hp", 50);
+		data.put("customStatus", "afk");
+		byte[] payload = codec.encode(data);
+		GimUpdate update = new GimUpdate();
+
+		assertFalse(manager.parseBroadcastData(new Object[]{Arrays.copyOf(payload, payload.length - 2)}, update));
+		assertFalse(manager.parseBroadcastData(new Object[]{"not an object"}, update));
+		assertFalse(manager.parseBroadcastData(new Object[0], update));
+		assertTrue(manager.parseBroadcastData(new Object[]{payload}, update));
+		assertEquals(50, update.getHp());
+	}
+
+	private static GimPlayer gimp()
+	{
+		GimPlayer gimp = new GimPlayer("Gimp", 301, Color.RED);
+		gimp.setHp(50);
+		gimp.setMaxHp(99);
+		gimp.setPrayer(40);
+		gimp.setMaxPrayer(70);
+		gimp.setLocation(new GimLocation(3200, 3400, 0));
+		return gimp;
+	}
+
+	/**
+	 * HTTP server answering pings and broadcasts, and recording them.
+	 * Anything else, e.g. realtime connection attempts, is refused.
+	 */
+	static class RecordingServer
+	{
+		private final HttpServer server;
+
+		private final BlockingQueue<String> pings = new LinkedBlockingQueue<>();
+
+		private final BlockingQueue<JSONObject> broadcasts = new LinkedBlockingQueue<>();
+
+		private final BlockingQueue<JSONObject> refused = new LinkedBlockingQueue<>();
+
+		volatile String pingReply = "{}";
+
+		/* Number of broadcasts still to be refused. */
+		volatile int failBroadcasts;
+
+		RecordingServer() throws IOException
+		{
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			server.createContext("/", this::handle);
+			server.start();
+		}
+
+		String getAddress()
+		{
+			return "http://127.0.0.1:" + server.getAddress().getPort();
+		}
+
+		String takePing() throws InterruptedException
+		{
+			String ping = pings.poll(5, TimeUnit.SECONDS);
+			assertNotNull("no ping received", ping);
+			return ping;
+		}
+
+		JSONObject takeBroadcast() throws InterruptedException
+		{
+			JSONObject broadcast = broadcasts.poll(5, TimeUnit.SECONDS);
+			assertNotNull("no broadcast received", broadcast);
+			return broadcast;
+		}
+
+		JSONObject takeRefused() throws InterruptedException
+		{
+			JSONObject broadcast = refused.poll(5, TimeUnit.SECONDS);
+			assertNotNull("no broadcast refused", broadcast);
+			return broadcast;
+		}
+
+		void stop()
+		{
+			server.stop(0);
+		}
+
+		private void handle(HttpExchange exchange) throws IOException
+		{
+			final String path = exchange.getRequestURI().toString();
+			try
+			{
+				if (path.startsWith("/ping/"))
+				{
+					pings.add(path);
+					reply(exchange, 200, pingReply);
+				}
+				else if (path.startsWith("/broadcast/"))
+				{
+					final String body = read(exchange.getRequestBody());
+					if (failBroadcasts > 0)
+					{
+						failBroadcasts--;
+						refused.add(new JSONObject(body));
+						reply(exchange, 500, "");
+						return;
+					}
+					broadcasts.add(new JSONObject(body));
+					reply(exchange, 200, "{}");
+				}
+				else
+				{
+					reply(exchange, 404, "");
+				}
+			}
+			catch (Exception e)
+			{
+				reply(exchange, 500, "");
+			}
+		}
+
+		private static String read(InputStream in) throws IOException
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			for (int n; (n = in.read(buffer)) > 0; )
+			{
+				out.write(buffer, 0, n);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+
+		private static void reply(HttpExchange exchange, int code, String body) throws IOException
+		{
+			final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(code, bytes.length > 0 ? bytes.length : -1);
+			try (OutputStream out = exchange.getResponseBody())
+			{
+				out.write(bytes);
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.gimp.gimps;
+
+import com.gimp.requests.BinaryCodec;
+import com.gimp.requests.BroadcastDelta;
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Prints the bytes allocated per local change on the paths from a change
+ * to its payload, to check that marking changes and ticks that change
+ * nothing visible allocate nothing. A window that sends a change still
+ * allocates its delta map and payload. Run the main method from the IDE,
+ * like GimPluginTest. Needs a JVM that reports per-thread allocation,
+ * such as HotSpot.
+ */
+public class DirtyFieldBenchmark
+{
+	private static final int WARMUP = 200_000;
+
+	private static final int ITERATIONS = 1_000_000;
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args)
+	{
+		final GimPlayer gimp = new GimPlayer("Gimp", 301, Color.RED);
+		gimp.setHp(50);
+		gimp.setPrayer(40);
+		gimp.setLocation(new GimLocation(3200, 3400, 0));
+		final Map<String, Object> data = new HashMap<>();
+		final BinaryCodec codec = new BinaryCodec();
+
+		report("data map per change (before)", () -> {
+			// What each change used to build: a map of the gimp's name and the
+			// changed value, and a map of boxed coordinates for locations
+			Map<String, Object> change = new HashMap<>();
+			change.put("name", gimp.getName());
+			Map<String, Integer> location = new HashMap<>();
+			location.put("x", gimp.getLocation().getX());
+			location.put("y", gimp.getLocation().getY());
+			location.put("plane", gimp.getLocation().getPlane());
+			change.put("location", location);
+		});
+		report("mark dirty per change", () -> gimp.markDirty(GimField.LOCATION));
+		report("take and put dirty fields per window", () -> {
+			gimp.markDirty(GimField.HP);
+			gimp.markDirty(GimField.LOCATION);
+			gimp.putFields(gimp.takeDirty(), data);
+		});
+		data.put("name", gimp.getName());
+		report("binary encode per window", () -> codec.encode(data));
+
+		final GimLocation location = gimp.getLocation();
+		final GimPlayerSnapshot published = new GimPlayerSnapshot(gimp);
+		report("unchanged tick up to publish", () -> {
+			gimp.setLocation(location);
+			gimp.markDirty(GimField.LOCATION);
+			published.matches(gimp);
+		});
+		final BroadcastDelta broadcastDelta = new BroadcastDelta();
+		final int[] hp = new int[1];
+		report("tick, flush, diff and encode per window", () -> {
+			// Small values box to cached Integers, like real HP does
+			gimp.setHp(hp[0]++ & 63);
+			gimp.markDirty(GimField.HP);
+			gimp.markDirty(GimField.LOCATION);
+			gimp.putFields(gimp.takeDirty(), data);
+			codec.encode(broadcastDelta.diff(data));
+		});
+	}
+
+	private static void report(String name, Runnable operation)
+	{
+		for (int i = 0; i < WARMUP; i++)
+		{
+			operation.run();
+		}
+		final long threadId = Thread.currentThread().getId();
+		final long before = THREADS.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < ITERATIONS; i++)
+		{
+			operation.run();
+		}
+		final long allocated = THREADS.getThreadAllocatedBytes(threadId) - before;
+		System.out.printf("%-40s %8.1f bytes/op%n", name, (double) allocated / ITERATIONS);
+	}
+}
@@ -0,0 +1,41 @@
+package com.gimp.gimps;
+
+import java.awt.Color;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class GimPlayerSnapshotTest
+{
+	@Test
+	public void matchesUnchangedGimp()
+	{
+		GimPlayer gimp = gimp();
+		GimPlayerSnapshot snapshot = new GimPlayerSnapshot(gimp);
+		gimp.setHp(50);
+		gimp.markDirty(GimField.HP);
+
+		assertTrue(snapshot.matches(gimp));
+		assertTrue(snapshot.getChanges(new GimPlayerSnapshot(gimp)).isEmpty());
+	}
+
+	@Test
+	public void doesNotMatchChangedGimp()
+	{
+		GimPlayer gimp = gimp();
+		GimPlayerSnapshot snapshot = new GimPlayerSnapshot(gimp);
+		gimp.setCustomStatus(null);
+
+		assertFalse(snapshot.matches(gimp));
+		assertFalse(snapshot.getChanges(new GimPlayerSnapshot(gimp)).isEmpty());
+	}
+
+	private static GimPlayer gimp()
+	{
+		GimPlayer gimp = new GimPlayer("Gimp", 301, Color.RED);
+		gimp.setHp(50);
+		gimp.setCustomStatus("afk");
+		gimp.setLocation(new GimLocation(3200, 3400, 0));
+		return gimp;
+	}
+}
@@ -0,0 +1,137 @@
+package com.gimp.gimps;
+
+import java.awt.Color;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class GimPlayerTest
+{
+	@Test
+	public void putsOnlyDirtyFields()
+	{
+		GimPlayer gimp = gimp();
+		gimp.markDirty(GimField.HP);
+		gimp.markDirty(GimField.LOCATION);
+
+		Map<String, Object> data = new HashMap<>();
+		gimp.putFields(gimp.takeDirty(), data);
+
+		assertEquals(2, data.size());
+		assertEquals(50, data.get("hp"));
+		assertEquals(new GimLocation(3200, 3400, 0), data.get("location"));
+	}
+
+	@Test
+	public void takingDirtyFieldsClearsThem()
+	{
+		GimPlayer gimp = gimp();
+		gimp.markDirty(GimField.PRAYER);
+		gimp.markDirty(GimField.PRAYER);
+
+		assertEquals(GimField.PRAYER.getBit(), gimp.takeDirty());
+		assertEquals(0, gimp.takeDirty());
+	}
+
+	@Test
+	public void putsLatestValueOfFieldsChangedSeveralTimes()
+	{
+		GimPlayer gimp = gimp();
+		gimp.setHp(40);
+		gimp.markDirty(GimField.HP);
+		gimp.setHp(30);
+		gimp.markDirty(GimField.HP);
+
+		Map<String, Object> data = new HashMap<>();
+		gimp.putFields(gimp.takeDirty(), data);
+
+		assertEquals(30, data.get("hp"));
+	}
+
+	@Test
+	public void suppressesLocationInGhostMode()
+	{
+		GimPlayer gimp = gimp();
+		gimp.setGhostMode(true);
+		gimp.markAllDirty();
+
+		Map<String, Object> data = new HashMap<>();
+		gimp.putFields(gimp.takeDirty(), data);
+
+		assertFalse(data.containsKey("location"));
+		assertEquals(true, data.get("ghostMode"));
+	}
+
+	@Test
+	public void marksEveryBroadcastField()
+	{
+		GimPlayer gimp = gimp();
+		gimp.markAllDirty();
+		final int dirty = gimp.takeDirty();
+
+		for (GimField field : GimField.values())
+		{
+			final boolean broadcast = field != GimField.SEQ && field != GimField.TILE_PING && field != GimField.TIMESTAMP;
+			assertEquals(field.name(), broadcast, (dirty & field.getBit()) != 0);
+		}
+	}
+
+	@Test
+	public void sequencedValuesRejectOlderAndUnsequencedUpdates()
+	{
+		GimPlayer gimp = gimp();
+		assertTrue(gimp.isNewer(GimField.HP, 0, 0));
+		gimp.setVersion(GimField.HP, 10);
+
+		assertTrue(gimp.isNewer(GimField.HP, 11, 0));
+		assertFalse(gimp.isNewer(GimField.HP, 10, 0));
+		assertFalse(gimp.isNewer(GimField.HP, 9, 0));
+		assertFalse(gimp.isNewer(GimField.HP, 0, 0));
+	}
+
+	@Test
+	public void snapshotMadeAfterSequencedValueReplacesIt()
+	{
+		GimPlayer gimp = gimp();
+		gimp.setVersion(GimField.HP, 10);
+		final long now = System.currentTimeMillis();
+
+		assertFalse(gimp.isNewer(GimField.HP, 0, now - 60_000));
+		assertTrue(gimp.isNewer(GimField.HP, 0, now + 60_000));
+	}
+
+	@Test
+	public void unsequencedValueKeepsSequenceNumberItReplaced()
+	{
+		GimPlayer gimp = gimp();
+		gimp.setVersion(GimField.HP, 10);
+		gimp.setVersion(GimField.HP, 0);
+
+		assertFalse(gimp.isNewer(GimField.HP, 9, 0));
+		assertTrue(gimp.isNewer(GimField.HP, 11, 0));
+	}
+
+	@Test
+	public void versionsAreTrackedPerField()
+	{
+		GimPlayer gimp = gimp();
+		gimp.setVersion(GimField.HP, 10);
+
+		assertTrue(gimp.isNewer(GimField.PRAYER, 5, 0));
+		assertFalse(gimp.isNewer(GimField.HP, 5, 0));
+	}
+
+	private static GimPlayer gimp()
+	{
+		GimPlayer gimp = new GimPlayer("Gimp", 301, Color.RED);
+		gimp.setHp(50);
+		gimp.setMaxHp(99);
+		gimp.setPrayer(40);
+		gimp.setMaxPrayer(70);
+		gimp.setLocation(new GimLocation(3200, 3400, 0));
+		return gimp;
+	}
+}
@@ -0,0 +1,42 @@
+package com.gimp.gimps;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class GroupMembersTest
+{
+	private final List<GimPlayer> gimps = Arrays.asList(
+		new GimPlayer("Alice", 301, Color.RED),
+		new GimPlayer("Bob Smith", 301, Color.BLUE));
+
+	@Test
+	public void matchesSameMembersAfterHop()
+	{
+		assertTrue(Group.isSameMembers(gimps, Arrays.asList("Alice", "Bob Smith")));
+	}
+
+	@Test
+	public void matchesNamesWithNoBreakSpaces()
+	{
+		assertTrue(Group.isSameMembers(gimps, Arrays.asList("Alice", "Bob\u00A0Smith")));
+	}
+
+	@Test
+	public void rejectsReorderedMembers()
+	{
+		assertFalse(Group.isSameMembers(gimps, Arrays.asList("Bob Smith", "Alice")));
+	}
+
+	@Test
+	public void rejectsJoinedOrLeftMembers()
+	{
+		assertFalse(Group.isSameMembers(gimps, Arrays.asList("Alice", "Bob Smith", "Carol")));
+		assertFalse(Group.isSameMembers(gimps, Collections.singletonList("Alice")));
+		assertFalse(Group.isSameMembers(gimps, Arrays.asList("Alice", "Carol")));
+	}
+}
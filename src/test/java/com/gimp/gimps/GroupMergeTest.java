@@ -0,0 +1,133 @@
+package com.gimp.gimps;
+
+import java.awt.Color;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class GroupMergeTest
+{
+	@Test
+	public void appliesNewerSequencedUpdate()
+	{
+		GimPlayer gimp = gimp();
+		assertTrue(Group.merge(gimp, hp(10, 50), 0, false));
+		assertTrue(Group.merge(gimp, hp(11, 45), 0, false));
+
+		assertEquals(Integer.valueOf(45), gimp.getHp());
+		assertEquals(Long.valueOf(11), gimp.getSeq());
+	}
+
+	@Test
+	public void rejectsStaleAndDuplicateUpdates()
+	{
+		GimPlayer gimp = gimp();
+		Group.merge(gimp, hp(10, 50), 0, false);
+
+		assertFalse(Group.merge(gimp, hp(9, 45), 0, false));
+		assertFalse(Group.merge(gimp, hp(10, 45), 0, false));
+		assertEquals(Integer.valueOf(50), gimp.getHp());
+		assertEquals(Long.valueOf(10), gimp.getSeq());
+	}
+
+	@Test
+	public void mergesEachFieldByItsOwnVersion()
+	{
+		GimPlayer gimp = gimp();
+		Group.merge(gimp, hp(10, 50), 0, false);
+		GimUpdate older = hp(9, 45);
+		older.setPrayer(30);
+
+		// Prayer was never set by a newer update, so it's applied even though hp is stale
+		assertTrue(Group.merge(gimp, older, 0, false));
+		assertEquals(Integer.valueOf(50), gimp.getHp());
+		assertEquals(Integer.valueOf(30), gimp.getPrayer());
+		assertEquals(Long.valueOf(10), gimp.getSeq());
+	}
+
+	@Test
+	public void unsequencedUpdatesReplaceUnsequencedValues()
+	{
+		GimPlayer gimp = gimp();
+		assertTrue(Group.merge(gimp, hp(0, 50), 0, false));
+		assertTrue(Group.merge(gimp, hp(0, 45), 0, false));
+
+		assertEquals(Integer.valueOf(45), gimp.getHp());
+		assertNull(gimp.getSeq());
+	}
+
+	@Test
+	public void onlyLaterSnapshotsReplaceSequencedValues()
+	{
+		GimPlayer gimp = gimp();
+		Group.merge(gimp, hp(10, 50), 0, false);
+		final long now = System.currentTimeMillis();
+
+		assertFalse(Group.merge(gimp, hp(0, 45), 0, false));
+		assertFalse(Group.merge(gimp, hp(0, 45), now - 60_000, false));
+		assertEquals(Integer.valueOf(50), gimp.getHp());
+
+		assertTrue(Group.merge(gimp, hp(0, 40), now + 60_000, false));
+		assertEquals(Integer.valueOf(40), gimp.getHp());
+		// The snapshot's value keeps the sequence number it replaced
+		assertFalse(Group.merge(gimp, hp(9, 35), 0, false));
+		assertTrue(Group.merge(gimp, hp(11, 35), 0, false));
+	}
+
+	@Test
+	public void localGimpKeepsItsOwnGameData()
+	{
+		GimPlayer gimp = gimp();
+		gimp.setHp(50);
+		GimUpdate update = hp(10, 45);
+		update.setMaxHp(99);
+		update.setCustomStatus("afk");
+
+		assertTrue(Group.merge(gimp, update, 0, true));
+		assertEquals(Integer.valueOf(50), gimp.getHp());
+		assertEquals(Integer.valueOf(99), gimp.getMaxHp());
+		assertEquals("afk", gimp.getCustomStatus());
+	}
+
+	@Test
+	public void appliesUpdateWithNoFields()
+	{
+		GimPlayer gimp = gimp();
+		GimUpdate update = new GimUpdate();
+		update.setName(gimp.getName());
+
+		assertTrue(Group.merge(gimp, update, 0, false));
+	}
+
+	@Test
+	public void clearsFieldsSetToNull()
+	{
+		GimPlayer gimp = gimp();
+		gimp.setCustomStatus("afk");
+		GimUpdate cleared = hp(10, 50);
+		cleared.clear(GimField.CUSTOM_STATUS);
+
+		assertTrue(Group.merge(gimp, cleared, 0, false));
+		assertNull(gimp.getCustomStatus());
+		assertEquals(Integer.valueOf(50), gimp.getHp());
+	}
+
+	private static GimPlayer gimp()
+	{
+		return new GimPlayer("Gimp", 301, Color.RED);
+	}
+
+	private static GimUpdate hp(long seq, int hp)
+	{
+		GimUpdate update = new GimUpdate();
+		update.setName("Gimp");
+		if (seq > 0)
+		{
+			update.setSeq(seq);
+		}
+		update.setHp(hp);
+		return update;
+	}
+}
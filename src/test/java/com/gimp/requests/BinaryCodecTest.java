@@ -0,0 +1,196 @@
+package com.gimp.requests;
+
+import com.gimp.gimps.GimField;
+import com.gimp.gimps.GimLocation;
+import com.gimp.gimps.GimUpdate;
+import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class BinaryCodecTest
+{
+	@Test
+	public void roundTripsEveryStateField()
+	{
+		Map<String, Object> data = new HashMap<>();
+		data.put("name", "alice");
+		data.put("seq", 1650000000123L);
+		data.put("hp", 50);
+		data.put("maxHp", 99);
+		data.put("prayer", 40);
+		data.put("maxPrayer", 70);
+		data.put("customStatus", "h\u00e9llo \u2603");
+		data.put("ghostMode", true);
+		data.put("location", new GimLocation(3200, 3400, 2));
+		data.put("lastActivity", "2022-04-15T12:00:00Z");
+		data.put("time", 1650000000000L);
+
+		GimUpdate update = decode(new BinaryCodec().encode(data));
+
+		assertEquals("alice", update.getName());
+		assertEquals(1650000000123L, update.getSeq());
+		assertEquals(50, update.getHp());
+		assertEquals(99, update.getMaxHp());
+		assertEquals(40, update.getPrayer());
+		assertEquals(70, update.getMaxPrayer());
+		assertEquals("h\u00e9llo \u2603", update.getCustomStatus());
+		assertTrue(update.isGhostMode());
+		assertEquals(new GimLocation(3200, 3400, 2), update.getLocation());
+		assertEquals("2022-04-15T12:00:00Z", update.getLastActivity());
+		assertEquals(1650000000000L, update.getTimestamp());
+	}
+
+	@Test
+	public void decodesOnlyFieldsPresent()
+	{
+		Map<String, Object> data = new HashMap<>();
+		data.put("name", "alice");
+		data.put("prayer", 0);
+		data.put("ghostMode", false);
+
+		GimUpdate update = decode(new BinaryCodec().encode(data));
+
+		assertTrue(update.has(GimField.PRAYER));
+		assertTrue(update.has(GimField.GHOST_MODE));
+		assertFalse(update.isGhostMode());
+		assertFalse(update.has(GimField.HP));
+		assertFalse(update.has(GimField.LOCATION));
+		assertFalse(update.has(GimField.CUSTOM_STATUS));
+	}
+
+	@Test
+	public void roundTripsClearedFields()
+	{
+		Map<String, Object> data = new HashMap<>();
+		data.put("name", "alice");
+		data.put("hp", 50);
+		data.put("customStatus", null);
+		data.put("ghostMode", null);
+		data.put("location", null);
+		JsonCodec jsonCodec = new JsonCodec(new Gson());
+		byte[] json = jsonCodec.encode(data);
+		GimUpdate fromJson = new GimUpdate();
+		jsonCodec.decode(json, fromJson);
+
+		for (GimUpdate update : new GimUpdate[]{decode(new BinaryCodec().encode(data)), fromJson})
+		{
+			assertEquals(50, update.getHp());
+			assertFalse(update.isCleared(GimField.HP));
+			assertTrue(update.isCleared(GimField.CUSTOM_STATUS));
+			assertNull(update.getCustomStatus());
+			assertTrue(update.isCleared(GimField.GHOST_MODE));
+			// Locations hidden by ghost mode are left out, not cleared
+			assertFalse(update.has(GimField.LOCATION));
+		}
+		assertTrue(new String(json, StandardCharsets.UTF_8).contains("\"customStatus\":null"));
+	}
+
+	@Test
+	public void writesVersionOneWithoutClearedFields()
+	{
+		Map<String, Object> data = new HashMap<>();
+		data.put("name", "alice");
+		data.put("hp", 50);
+		data.put("location", null);
+
+		assertEquals(1, new BinaryCodec().encode(data)[0]);
+	}
+
+	@Test
+	public void packsLocationIntoOneVarint()
+	{
+		Map<String, Object> data = new HashMap<>();
+		data.put("name", "");
+		data.put("location", new GimLocation(32767, 32767, 3));
+
+		byte[] payload = new BinaryCodec().encode(data);
+
+		// version, mask, empty name, then 32 bits of location in a 5 byte varint
+		assertEquals(1 + 2 + 1 + 5, payload.length);
+		assertEquals(new GimLocation(32767, 32767, 3), decode(payload).getLocation());
+	}
+
+	@Test
+	public void packsSmallLocations()
+	{
+		for (GimLocation location : new GimLocation[]{
+			new GimLocation(0, 0, 0),
+			new GimLocation(1, 0, 0),
+			new GimLocation(0, 1, 0),
+			new GimLocation(0, 0, 1),
+			new GimLocation(3222, 3218, 0)})
+		{
+			Map<String, Object> data = new HashMap<>();
+			data.put("name", "alice");
+			data.put("location", location);
+
+			assertEquals(location, decode(new BinaryCodec().encode(data)).getLocation());
+		}
+	}
+
+	@Test
+	public void returnsIndependentPayloadsFromReusedBuffer()
+	{
+		BinaryCodec codec = new BinaryCodec();
+		Map<String, Object> data = new HashMap<>();
+		data.put("name", "alice");
+		data.put("hp", 50);
+		byte[] first = codec.encode(data);
+		data.put("hp", 10);
+		codec.encode(data);
+
+		assertEquals(50, decode(first).getHp());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownVersion()
+	{
+		decode(new byte[]{3, 0, 0});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsTruncatedPayload()
+	{
+		Map<String, Object> data = new HashMap<>();
+		data.put("name", "alice");
+		data.put("customStatus", "afk");
+		byte[] payload = new BinaryCodec().encode(data);
+		byte[] truncated = new byte[payload.length - 2];
+		System.arraycopy(payload, 0, truncated, 0, truncated.length);
+
+		decode(truncated);
+	}
+
+	@Test
+	public void encodesJsonThatDecodesToTheSameUpdate()
+	{
+		Map<String, Object> data = new HashMap<>();
+		data.put("name", "alice");
+		data.put("hp", 50);
+		data.put("customStatus", "afk");
+		data.put("location", new GimLocation(3200, 3400, 1));
+		JsonCodec jsonCodec = new JsonCodec(new Gson());
+
+		byte[] json = jsonCodec.encode(data);
+		GimUpdate update = new GimUpdate();
+		jsonCodec.decode(json, update);
+
+		assertEquals(decode(new BinaryCodec().encode(data)).getLocation(), update.getLocation());
+		assertEquals(50, update.getHp());
+		assertEquals("afk", update.getCustomStatus());
+		assertTrue(new String(json, StandardCharsets.UTF_8).contains("\"location\":{\"x\":3200,\"y\":3400,\"plane\":1}"));
+	}
+
+	private static GimUpdate decode(byte[] payload)
+	{
+		GimUpdate update = new GimUpdate();
+		new BinaryCodec().decode(payload, update);
+		return update;
+	}
+}
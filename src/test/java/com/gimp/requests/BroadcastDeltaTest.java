@@ -0,0 +1,120 @@
+package com.gimp.requests;
+
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class BroadcastDeltaTest
+{
+	@Test
+	public void sendsEveryFieldFirst()
+	{
+		Map<String, Object> delta = new BroadcastDelta().diff(data(50, 40));
+
+		assertEquals("alice", delta.get(BroadcastDelta.NAME));
+		assertEquals(50, delta.get("hp"));
+		assertEquals(40, delta.get("prayer"));
+		assertTrue(delta.containsKey(BroadcastDelta.SEQUENCE));
+	}
+
+	@Test
+	public void sendsOnlyChangedFields()
+	{
+		BroadcastDelta broadcastDelta = new BroadcastDelta();
+		broadcastDelta.diff(data(50, 40));
+
+		Map<String, Object> delta = broadcastDelta.diff(data(45, 40));
+
+		assertEquals(45, delta.get("hp"));
+		assertFalse(delta.containsKey("prayer"));
+		assertEquals("alice", delta.get(BroadcastDelta.NAME));
+	}
+
+	@Test
+	public void sendsNothingWhenCoalescedChangesCancelOut()
+	{
+		BroadcastDelta broadcastDelta = new BroadcastDelta();
+		broadcastDelta.diff(data(50, 40));
+
+		// hp went 50 -> 45 -> 50 within one window, so only the latest value is diffed
+		assertNull(broadcastDelta.diff(data(50, 40)));
+	}
+
+	@Test
+	public void numbersEachDeltaAfterThePrevious()
+	{
+		BroadcastDelta broadcastDelta = new BroadcastDelta();
+		long first = (Long) broadcastDelta.diff(data(50, 40)).get(BroadcastDelta.SEQUENCE);
+		long second = (Long) broadcastDelta.diff(data(45, 40)).get(BroadcastDelta.SEQUENCE);
+
+		assertEquals(first + 1, second);
+		assertTrue(first > System.currentTimeMillis() - 60_000);
+	}
+
+	@Test
+	public void alwaysSendsTilePingsWithoutBaseliningThem()
+	{
+		BroadcastDelta broadcastDelta = new BroadcastDelta();
+		broadcastDelta.diff(data(50, 40));
+		Map<String, Object> ping = new HashMap<>();
+		ping.put(BroadcastDelta.NAME, "alice");
+		ping.put("tilePing", "ping");
+
+		assertEquals("ping", broadcastDelta.diff(ping).get("tilePing"));
+		assertEquals("ping", broadcastDelta.diff(ping).get("tilePing"));
+	}
+
+	@Test
+	public void resendsInvalidatedFields()
+	{
+		BroadcastDelta broadcastDelta = new BroadcastDelta();
+		Map<String, Object> failed = broadcastDelta.diff(data(50, 40));
+		broadcastDelta.invalidate(failed);
+
+		Map<String, Object> delta = broadcastDelta.diff(data(50, 40));
+
+		assertEquals(50, delta.get("hp"));
+		assertEquals(40, delta.get("prayer"));
+	}
+
+	@Test
+	public void keepsNewerValuesWhenOlderDeltaFails()
+	{
+		BroadcastDelta broadcastDelta = new BroadcastDelta();
+		Map<String, Object> failed = broadcastDelta.diff(data(50, 40));
+		broadcastDelta.diff(data(45, 40));
+		broadcastDelta.invalidate(failed);
+
+		Map<String, Object> delta = broadcastDelta.diff(data(45, 40));
+
+		// prayer only went out with the failed delta, hp has since been sent again
+		assertFalse(delta.containsKey("hp"));
+		assertEquals(40, delta.get("prayer"));
+	}
+
+	@Test
+	public void resendsEverythingAfterReset()
+	{
+		BroadcastDelta broadcastDelta = new BroadcastDelta();
+		broadcastDelta.diff(data(50, 40));
+		broadcastDelta.reset();
+
+		Map<String, Object> delta = broadcastDelta.diff(data(50, 40));
+
+		assertEquals(50, delta.get("hp"));
+		assertEquals(40, delta.get("prayer"));
+	}
+
+	private static Map<String, Object> data(int hp, int prayer)
+	{
+		Map<String, Object> data = new HashMap<>();
+		data.put(BroadcastDelta.NAME, "alice");
+		data.put("hp", hp);
+		data.put("prayer", prayer);
+		return data;
+	}
+}
@@ -0,0 +1,154 @@
+package com.gimp.requests;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BroadcastOutboxTest
+{
+	private final Gson gson = new Gson();
+
+	private File directory;
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory("outbox").toFile();
+		file = new File(new File(directory, "gimp"), "outbox.json");
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+		file.getParentFile().delete();
+		directory.delete();
+	}
+
+	@Test
+	public void survivesRestart()
+	{
+		BroadcastOutbox outbox = new BroadcastOutbox(file, gson);
+		outbox.add(data("alice", 50));
+
+		BroadcastOutbox restarted = new BroadcastOutbox(file, gson);
+		restarted.load();
+
+		Map<String, Object> fields = restarted.getFields("alice");
+		assertEquals(1, fields.size());
+		// Read back as an Integer, like the value broadcast
+		assertEquals(50, fields.get("hp"));
+	}
+
+	@Test
+	public void keepsOnlyDurableFields()
+	{
+		BroadcastOutbox outbox = new BroadcastOutbox(file, gson);
+		Map<String, Object> data = data("alice", 50);
+		data.put("location", "3200,3400,0");
+		data.put("tilePing", "ping");
+		data.put(BroadcastDelta.SEQUENCE, 7L);
+		data.put("customStatus", "afk");
+		outbox.add(data);
+
+		Map<String, Object> fields = outbox.getFields("alice");
+		assertEquals(2, fields.size());
+		assertEquals("afk", fields.get("customStatus"));
+	}
+
+	@Test
+	public void keepsLatestValueOfEachField()
+	{
+		BroadcastOutbox outbox = new BroadcastOutbox(file, gson);
+		outbox.add(data("alice", 50));
+		outbox.add(data("alice", 40));
+
+		assertEquals(40, outbox.getFields("alice").get("hp"));
+	}
+
+	@Test
+	public void deletesFileOnceDelivered()
+	{
+		BroadcastOutbox outbox = new BroadcastOutbox(file, gson);
+		outbox.add(data("alice", 50));
+		assertTrue(file.exists());
+
+		outbox.acknowledge(data("alice", 50));
+
+		assertTrue(outbox.isEmpty());
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void dropsFieldsOfAnotherGimp()
+	{
+		BroadcastOutbox outbox = new BroadcastOutbox(file, gson);
+		outbox.add(data("alice", 50));
+		outbox.acknowledge(data("bob", 50));
+		assertFalse(outbox.isEmpty());
+
+		assertTrue(outbox.getFields("bob").isEmpty());
+		assertTrue(outbox.isEmpty());
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void replacesFieldsWhenAnotherGimpAdds()
+	{
+		BroadcastOutbox outbox = new BroadcastOutbox(file, gson);
+		Map<String, Object> alice = data("alice", 50);
+		alice.put("prayer", 30);
+		outbox.add(alice);
+		outbox.add(data("bob", 40));
+
+		BroadcastOutbox restarted = new BroadcastOutbox(file, gson);
+		restarted.load();
+		Map<String, Object> fields = restarted.getFields("bob");
+		assertEquals(1, fields.size());
+		assertEquals(40, fields.get("hp"));
+	}
+
+	@Test
+	public void dropsSavedOutboxWithoutOwner() throws IOException
+	{
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), "{\"hp\":50}".getBytes(StandardCharsets.UTF_8));
+
+		BroadcastOutbox outbox = new BroadcastOutbox(file, gson);
+		outbox.load();
+
+		assertTrue(outbox.isEmpty());
+	}
+
+	@Test
+	public void ignoresCorruptFile() throws IOException
+	{
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), "{\"hp\":".getBytes(StandardCharsets.UTF_8));
+
+		BroadcastOutbox outbox = new BroadcastOutbox(file, gson);
+		outbox.load();
+
+		assertTrue(outbox.isEmpty());
+	}
+
+	private static Map<String, Object> data(String name, int hp)
+	{
+		Map<String, Object> data = new HashMap<>();
+		data.put(BroadcastDelta.NAME, name);
+		data.put("hp", hp);
+		return data;
+	}
+}
@@ -0,0 +1,83 @@
+package com.gimp.requests;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CircuitBreakerTest
+{
+	@Test
+	public void allowsRequestsWhileClosed()
+	{
+		CircuitBreaker breaker = new CircuitBreaker();
+		for (int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++)
+		{
+			breaker.recordFailure();
+		}
+
+		assertFalse(breaker.isOpen());
+		assertTrue(breaker.allowRequest());
+	}
+
+	@Test
+	public void opensAfterThresholdFailuresInARow()
+	{
+		CircuitBreaker breaker = failed(CircuitBreaker.FAILURE_THRESHOLD);
+
+		assertTrue(breaker.isOpen());
+		assertFalse(breaker.allowRequest());
+		final long delay = breaker.getRetryDelay();
+		assertTrue(delay <= CircuitBreaker.OPEN_DURATION);
+		assertTrue(delay >= CircuitBreaker.OPEN_DURATION / 2 - 1_000);
+	}
+
+	@Test
+	public void closesOnSuccess()
+	{
+		CircuitBreaker breaker = failed(CircuitBreaker.FAILURE_THRESHOLD);
+		breaker.recordSuccess();
+
+		assertFalse(breaker.isOpen());
+		assertTrue(breaker.allowRequest());
+		assertBackoff(CircuitBreaker.BASE_DELAY, breaker.getRetryDelay());
+	}
+
+	@Test
+	public void successResetsFailureCount()
+	{
+		CircuitBreaker breaker = failed(CircuitBreaker.FAILURE_THRESHOLD - 1);
+		breaker.recordSuccess();
+		breaker.recordFailure();
+
+		assertFalse(breaker.isOpen());
+	}
+
+	@Test
+	public void doublesBackoffWithEachFailure()
+	{
+		for (int failures = 0; failures < CircuitBreaker.FAILURE_THRESHOLD; failures++)
+		{
+			for (int i = 0; i < 20; i++)
+			{
+				assertBackoff(CircuitBreaker.BASE_DELAY << failures, failed(failures).getRetryDelay());
+			}
+		}
+	}
+
+	private static CircuitBreaker failed(int failures)
+	{
+		CircuitBreaker breaker = new CircuitBreaker();
+		for (int i = 0; i < failures; i++)
+		{
+			breaker.recordFailure();
+		}
+		return breaker;
+	}
+
+	/* Jitter keeps the delay between half and all of the backoff. */
+	private static void assertBackoff(long backoff, long delay)
+	{
+		assertTrue("delay " + delay + " above " + backoff, delay <= backoff);
+		assertTrue("delay " + delay + " below half of " + backoff, delay >= backoff / 2);
+	}
+}
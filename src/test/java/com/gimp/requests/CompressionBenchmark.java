@@ -0,0 +1,38 @@
+package com.gimp.requests;
+
+import java.io.IOException;
+
+/**
+ * Prints how much deflate saves on ping snapshots of growing size, and
+ * what inflating them costs, to check where the compression threshold
+ * pays off. Run the main method from the IDE, like GimPluginTest.
+ */
+public class CompressionBenchmark
+{
+	private static final int WARMUP = 2_000;
+
+	private static final int ITERATIONS = 20_000;
+
+	public static void main(String[] args) throws IOException
+	{
+		System.out.println("gimps\tbytes\tdeflated\tratio\tinflate (us)");
+		for (int gimps = 1; gimps <= 64; gimps *= 2)
+		{
+			final byte[] snapshot = CompressionTest.snapshot(gimps);
+			final byte[] compressed = CompressionTest.deflate(snapshot);
+			for (int i = 0; i < WARMUP; i++)
+			{
+				Compression.inflate(compressed);
+			}
+			final long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++)
+			{
+				Compression.inflate(compressed);
+			}
+			final double micros = (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+			System.out.printf("%d\t%d\t%d\t%.2f\t%.2f%s%n", gimps, snapshot.length, compressed.length,
+				(double) compressed.length / snapshot.length, micros,
+				snapshot.length > Compression.THRESHOLD ? "\tcompressed" : "");
+		}
+	}
+}
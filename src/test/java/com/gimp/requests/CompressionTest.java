@@ -0,0 +1,101 @@
+package com.gimp.requests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CompressionTest
+{
+	@Test
+	public void inflatesDeflatedSnapshot() throws IOException
+	{
+		byte[] snapshot = snapshot(5);
+		assertArrayEquals(snapshot, Compression.inflate(deflate(snapshot)));
+	}
+
+	@Test
+	public void inflatesPayloadLargerThanItsInitialBuffer() throws IOException
+	{
+		// Highly repetitive, so it inflates to far more than four times its compressed size
+		byte[] payload = new byte[64 * 1024];
+		Arrays.fill(payload, (byte) 'a');
+		assertArrayEquals(payload, Compression.inflate(deflate(payload)));
+	}
+
+	@Test
+	public void snapshotAboveThresholdShrinks() throws IOException
+	{
+		byte[] snapshot = snapshot(5);
+		assertTrue(snapshot.length > Compression.THRESHOLD);
+		assertTrue(deflate(snapshot).length < snapshot.length / 2);
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsTruncatedPayload() throws IOException
+	{
+		byte[] compressed = deflate(snapshot(5));
+		Compression.inflate(Arrays.copyOf(compressed, compressed.length / 2));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsMalformedPayload() throws IOException
+	{
+		Compression.inflate("not compressed".getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Compresses a payload the way the server does, in the zlib format.
+	 */
+	static byte[] deflate(byte[] payload)
+	{
+		Deflater deflater = new Deflater();
+		try
+		{
+			deflater.setInput(payload);
+			deflater.finish();
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			while (!deflater.finished())
+			{
+				output.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return output.toByteArray();
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Builds a ping snapshot in JSON with the given number of gimps.
+	 */
+	static byte[] snapshot(int gimps)
+	{
+		StringBuilder json = new StringBuilder("{\"version\":1024,\"time\":1700000000000,\"gimps\":{");
+		for (int i = 0; i < gimps; i++)
+		{
+			if (i > 0)
+			{
+				json.append(',');
+			}
+			json.append("\"Gimp ").append(i).append("\":{")
+				.append("\"name\":\"Gimp ").append(i).append("\",")
+				.append("\"seq\":").append(1700000000000L + i * 37).append(',')
+				.append("\"hp\":").append(40 + i).append(",\"maxHp\":99,")
+				.append("\"prayer\":").append(20 + i).append(",\"maxPrayer\":70,")
+				.append("\"customStatus\":\"Skilling at the Grand Exchange\",")
+				.append("\"ghostMode\":false,")
+				.append("\"location\":{\"x\":").append(3200 + i).append(",\"y\":").append(3400 - i).append(",\"plane\":0},")
+				.append("\"lastActivity\":\"WOODCUTTING\",")
+				.append("\"time\":").append(1700000000000L + i)
+				.append('}');
+		}
+		return json.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,160 @@
+package com.gimp.requests;
+
+import com.gimp.gimps.GimField;
+import com.gimp.gimps.GimLocation;
+import com.gimp.gimps.GimUpdate;
+import com.google.gson.stream.JsonReader;
+import java.io.IOException;
+import java.io.StringReader;
+import org.json.JSONObject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class GimUpdateReaderTest
+{
+	@Test
+	public void streamsEveryField() throws IOException
+	{
+		GimUpdate update = read("{\"name\":\"alice\",\"seq\":7,\"hp\":50,\"maxHp\":99,\"prayer\":40,"
+			+ "\"maxPrayer\":70,\"customStatus\":\"afk\",\"ghostMode\":true,"
+			+ "\"location\":{\"x\":3200,\"y\":3400,\"plane\":1},\"lastActivity\":\"now\",\"time\":1650000000000}");
+
+		assertEquals("alice", update.getName());
+		assertEquals(7, update.getSeq());
+		assertEquals(50, update.getHp());
+		assertEquals(99, update.getMaxHp());
+		assertEquals(40, update.getPrayer());
+		assertEquals(70, update.getMaxPrayer());
+		assertEquals("afk", update.getCustomStatus());
+		assertTrue(update.isGhostMode());
+		assertEquals(new GimLocation(3200, 3400, 1), update.getLocation());
+		assertEquals("now", update.getLastActivity());
+		assertEquals(1650000000000L, update.getTimestamp());
+	}
+
+	@Test
+	public void streamsTilePingPointAndSkipsOtherKeys() throws IOException
+	{
+		GimUpdate update = read("{\"name\":\"alice\",\"tilePing\":{\"id\":[1,2],\"point\":{\"x\":1,\"y\":2,\"plane\":3}}}");
+
+		assertTrue(update.has(GimField.TILE_PING));
+		assertFalse(update.has(GimField.LOCATION));
+	}
+
+	@Test
+	public void clearsNullsAndSkipsUnknownKeys() throws IOException
+	{
+		GimUpdate update = read("{\"name\":\"alice\",\"hp\":null,\"future\":{\"nested\":[1,{\"a\":2}]},"
+			+ "\"location\":{\"x\":1,\"y\":2,\"z\":9,\"plane\":0},\"prayer\":12,\"time\":null}");
+
+		assertTrue(update.has(GimField.HP));
+		assertTrue(update.isCleared(GimField.HP));
+		assertFalse(update.has(GimField.TIMESTAMP));
+		assertFalse(update.isCleared(GimField.PRAYER));
+		assertEquals(12, update.getPrayer());
+		assertEquals(new GimLocation(1, 2, 0), update.getLocation());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsStreamedValueOfWrongType() throws IOException
+	{
+		read("{\"name\":\"alice\",\"hp\":\"full\"}");
+	}
+
+	@Test
+	public void readsEnvelope() throws IOException
+	{
+		PingData ping = GimUpdateReader.readPing(
+			"{\"version\":42,\"full\":false,\"time\":1650000000000,\"gimps\":{\"alice\":{\"hp\":50}}}", false);
+
+		assertEquals(Long.valueOf(42), ping.getVersion());
+		assertFalse(ping.isFull());
+		assertEquals(Long.valueOf(1650000000000L), ping.getTime());
+		assertEquals(1, ping.getGimps().size());
+		assertEquals(50, ping.getGimps().get("alice").getHp());
+		assertEquals("alice", ping.getGimps().get("alice").getName());
+	}
+
+	@Test
+	public void readsEnvelopeWithVersionAfterGimps() throws IOException
+	{
+		PingData ping = GimUpdateReader.readPing(
+			"{\"gimps\":{\"alice\":{\"hp\":50},\"bob\":{\"prayer\":30}},\"full\":false,\"version\":42}", false);
+
+		assertEquals(Long.valueOf(42), ping.getVersion());
+		assertFalse(ping.isFull());
+		assertEquals(2, ping.getGimps().size());
+		assertEquals(50, ping.getGimps().get("alice").getHp());
+		assertEquals(30, ping.getGimps().get("bob").getPrayer());
+	}
+
+	@Test
+	public void readsLegacyPingAsFull() throws IOException
+	{
+		PingData ping = GimUpdateReader.readPing(
+			"{\"alice\":{\"hp\":50,\"location\":{\"x\":3200,\"y\":3400,\"plane\":1}},\"gimps\":{\"hp\":10}}", false);
+
+		assertNull(ping.getVersion());
+		assertTrue(ping.isFull());
+		assertEquals(2, ping.getGimps().size());
+		assertEquals(new GimLocation(3200, 3400, 1), ping.getGimps().get("alice").getLocation());
+		// A gimp may be named like the envelope's key
+		assertEquals(10, ping.getGimps().get("gimps").getHp());
+	}
+
+	@Test
+	public void readsEmptyPingAsNotModified() throws IOException
+	{
+		assertEquals(PingData.NOT_MODIFIED, GimUpdateReader.readPing("", false));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsPingWithWrongValueType() throws IOException
+	{
+		GimUpdateReader.readPing("{\"version\":1,\"gimps\":{\"alice\":{\"hp\":true}}}", false);
+	}
+
+	@Test
+	public void readsParsedGimpData() throws Exception
+	{
+		GimUpdate update = new GimUpdate();
+		GimUpdateReader.read(new JSONObject(
+			"{\"name\":\"alice\",\"hp\":50,\"ghostMode\":false,\"location\":{\"x\":3200,\"y\":3400,\"plane\":1},\"lastActivity\":null}"), update);
+
+		assertEquals(50, update.getHp());
+		assertTrue(update.has(GimField.GHOST_MODE));
+		assertFalse(update.isGhostMode());
+		assertEquals(new GimLocation(3200, 3400, 1), update.getLocation());
+		assertTrue(update.isCleared(GimField.LAST_ACTIVITY));
+		assertNull(update.getLastActivity());
+	}
+
+	@Test
+	public void skipsParsedValuesOfWrongType() throws Exception
+	{
+		GimUpdate update = new GimUpdate();
+		GimUpdateReader.read(new JSONObject(
+			"{\"name\":\"alice\",\"hp\":50,\"ghostMode\":\"yes\",\"location\":5,\"tilePing\":[],\"prayer\":\"high\"}"), update);
+
+		assertEquals("alice", update.getName());
+		assertEquals(50, update.getHp());
+		assertTrue(update.has(GimField.HP));
+		assertFalse(update.has(GimField.GHOST_MODE));
+		assertFalse(update.has(GimField.LOCATION));
+		assertFalse(update.has(GimField.TILE_PING));
+		assertFalse(update.has(GimField.PRAYER));
+	}
+
+	private static GimUpdate read(String json) throws IOException
+	{
+		GimUpdate update = new GimUpdate();
+		try (JsonReader reader = new JsonReader(new StringReader(json)))
+		{
+			GimUpdateReader.read(reader, update);
+		}
+		return update;
+	}
+}
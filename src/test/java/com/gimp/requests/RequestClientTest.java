@@ -0,0 +1,73 @@
+package com.gimp.requests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class RequestClientTest
+{
+	@Test
+	public void sharesIdenticalRequestsInFlight()
+	{
+		FakeClient client = new FakeClient();
+		CompletableFuture<String> first = client.ping(null);
+		CompletableFuture<String> second = client.ping(null);
+
+		assertEquals(1, client.requests.size());
+		client.requests.get(0).complete("{}");
+		assertEquals("{}", first.join());
+		assertEquals("{}", second.join());
+	}
+
+	@Test
+	public void cancelsSharedRequestOnlyOnceAllCallersCancel()
+	{
+		FakeClient client = new FakeClient();
+		CompletableFuture<String> first = client.ping(null);
+		CompletableFuture<String> second = client.ping(null);
+
+		first.cancel(false);
+		assertFalse(client.requests.get(0).isCancelled());
+		second.cancel(false);
+		assertTrue(client.requests.get(0).isCancelled());
+	}
+
+	@Test
+	public void startsNewRequestAfterSharedOneIsAbandoned()
+	{
+		FakeClient client = new FakeClient();
+		client.ping(null).cancel(false);
+		CompletableFuture<String> next = client.ping(null);
+
+		assertEquals(2, client.requests.size());
+		assertFalse(next.isDone());
+		client.requests.get(1).complete("{}");
+		assertEquals("{}", next.join());
+	}
+
+	private static class FakeClient extends RequestClient
+	{
+		private final List<CompletableFuture<String>> requests = new ArrayList<>();
+
+		@Override
+		public CompletableFuture<String> ping(Long since)
+		{
+			return register("ping", () -> {
+				CompletableFuture<String> request = new CompletableFuture<>();
+				requests.add(request);
+				return request;
+			});
+		}
+
+		@Override
+		public CompletableFuture<String> broadcast(Map<String, Object> data, Priority priority)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.gimp.requests;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class ServerClockTest
+{
+	@Test
+	public void startsUnsampled()
+	{
+		ServerClock clock = new ServerClock();
+
+		assertEquals(0, clock.getOffset());
+		assertEquals(-1, clock.getRtt());
+	}
+
+	@Test
+	public void assumesServerReadItsClockHalfwayThroughRoundTrip()
+	{
+		ServerClock clock = new ServerClock();
+		clock.addSample(1_000, 1_100, 5_050);
+
+		assertEquals(4_000, clock.getOffset());
+		assertEquals(100, clock.getRtt());
+		assertEquals(1_050, clock.toLocalTime(5_050));
+	}
+
+	@Test
+	public void usesSampleWithShortestRoundTrip()
+	{
+		ServerClock clock = new ServerClock();
+		clock.addSample(1_000, 1_300, 5_400);
+		clock.addSample(2_000, 2_040, 6_020);
+		clock.addSample(3_000, 3_500, 7_900);
+
+		assertEquals(4_000, clock.getOffset());
+		assertEquals(40, clock.getRtt());
+	}
+
+	@Test
+	public void forgetsBestSampleOnceEnoughNewerOnesArrive()
+	{
+		ServerClock clock = new ServerClock();
+		clock.addSample(0, 10, 1_005);
+		for (int i = 1; i <= 8; i++)
+		{
+			clock.addSample(i * 1_000, i * 1_000 + 100, i * 1_000 + 2_050);
+		}
+
+		assertEquals(2_000, clock.getOffset());
+		assertEquals(100, clock.getRtt());
+	}
+
+	@Test
+	public void ignoresSamplesReceivedBeforeSent()
+	{
+		ServerClock clock = new ServerClock();
+		clock.addSample(1_000, 1_100, 5_050);
+		clock.addSample(2_000, 1_990, 9_000);
+
+		assertEquals(4_000, clock.getOffset());
+		assertEquals(100, clock.getRtt());
+	}
+
+	@Test
+	public void forgetsSamplesOnReset()
+	{
+		ServerClock clock = new ServerClock();
+		clock.addSample(1_000, 1_100, 5_050);
+		clock.reset();
+
+		assertEquals(0, clock.getOffset());
+		assertEquals(-1, clock.getRtt());
+		clock.addSample(1_000, 1_200, 1_100);
+		assertEquals(0, clock.getOffset());
+		assertEquals(200, clock.getRtt());
+	}
+}
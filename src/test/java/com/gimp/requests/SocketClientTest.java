@@ -0,0 +1,26 @@
+package com.gimp.requests;
+
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class SocketClientTest
+{
+	@Test
+	public void readsPlainPingAck() throws IOException
+	{
+		assertEquals("{\"version\":1}", SocketClient.readPingAck("{\"version\":1}"));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsEmptyPingAck() throws IOException
+	{
+		SocketClient.readPingAck();
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsNullPingAck() throws IOException
+	{
+		SocketClient.readPingAck((Object) null);
+	}
+}